@@ -0,0 +1,88 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code append()} on logging threads, with 1, 4 and 32 producers.
+ * <p>
+ * Run with {@code -prof gc} (default of {@code jmh} task) to see allocation per event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AppendBenchmark {
+    @Param({"false", "true"})
+    private boolean deferredLayout;
+
+    private LoggerContext context;
+    private AmazonCloudWatchAppender appender;
+    private StubAWSLogsClient client;
+
+    @Setup
+    public void setUp() {
+        context = new LoggerContext();
+
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%d %-5level [%thread] %logger{36} - %msg");
+        layout.start();
+
+        appender = new AmazonCloudWatchAppender("benchmark");
+        appender.setContext(context);
+        appender.setLogGroup("benchmark");
+        appender.setLogStream("append");
+        appender.setRegion("us-east-1");
+        client = new StubAWSLogsClient(0, 1);
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        appender.setDeferredLayout(deferredLayout);
+        appender.setMaxSendRate(Double.MAX_VALUE);
+        appender.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.stop();
+        client.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1() {
+        append();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void append4() {
+        append();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void append32() {
+        append();
+    }
+
+    private void append() {
+        LoggingEvent event = new LoggingEvent(AppendBenchmark.class.getName(),
+                context.getLogger(AppendBenchmark.class), Level.INFO, "Processed request {} in {} ms", null,
+                new Object[]{42, 7});
+        appender.doAppend(event);
+    }
+}
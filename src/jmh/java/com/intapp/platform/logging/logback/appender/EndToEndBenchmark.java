@@ -0,0 +1,86 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second delivered through the whole pipeline (append, queue, layout, batching, request) to a stubbed
+ * client with the given request latency.
+ * <p>
+ * Producers block while the queue is full, so once it fills up during warmup, append throughput equals the rate
+ * at which the worker delivers events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EndToEndBenchmark {
+    /**
+     * Latency of {@code PutLogEvents} request, in ms.
+     */
+    @Param({"0", "20"})
+    private long latency;
+
+    @Param({"1", "4"})
+    private int maxInFlightRequests;
+
+    @Param({"false", "true"})
+    private boolean deferredLayout;
+
+    private LoggerContext context;
+    private AmazonCloudWatchAppender appender;
+    private StubAWSLogsClient client;
+
+    @Setup
+    public void setUp() {
+        context = new LoggerContext();
+
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%d %-5level [%thread] %logger{36} - %msg");
+        layout.start();
+
+        appender = new AmazonCloudWatchAppender("benchmark");
+        appender.setContext(context);
+        appender.setLogGroup("benchmark");
+        appender.setLogStream("end-to-end");
+        appender.setRegion("us-east-1");
+        client = new StubAWSLogsClient(latency, maxInFlightRequests);
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        appender.setDeferredLayout(deferredLayout);
+        appender.setMaxInFlightRequests(maxInFlightRequests);
+        appender.setMaxSendRate(Double.MAX_VALUE);
+        // producer waits for the pipeline instead of losing events, so throughput is limited by delivery
+        appender.setOverflowPolicy(OverflowPolicy.BLOCK);
+        appender.setMaxBlockTime(TimeUnit.MINUTES.toMillis(1));
+        appender.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.stop();
+        client.shutdown();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void deliver() {
+        appender.doAppend(new LoggingEvent(EndToEndBenchmark.class.getName(),
+                context.getLogger(EndToEndBenchmark.class), Level.INFO, "Processed request {} in {} ms", null,
+                new Object[]{42, 7}));
+    }
+}
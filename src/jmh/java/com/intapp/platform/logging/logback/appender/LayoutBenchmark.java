@@ -0,0 +1,64 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.LayoutBase;
+import com.intapp.platform.logging.logback.layout.JsonLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of formatting a single event with pattern and JSON layouts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LayoutBenchmark {
+    @Param({"pattern", "json"})
+    private String layoutType;
+
+    @Param({"false", "true"})
+    private boolean withException;
+
+    private LayoutBase<ILoggingEvent> layout;
+    private LoggingEvent event;
+
+    @Setup
+    public void setUp() {
+        LoggerContext context = new LoggerContext();
+
+        if ("json".equals(layoutType)) {
+            layout = new JsonLayout();
+        } else {
+            PatternLayout patternLayout = new PatternLayout();
+            patternLayout.setPattern("%d %-5level [%thread] %logger{36} %X - %msg%n%ex");
+            layout = patternLayout;
+        }
+        layout.setContext(context);
+        layout.start();
+
+        event = new LoggingEvent(LayoutBenchmark.class.getName(), context.getLogger(LayoutBenchmark.class),
+                Level.WARN, "Request {} from {} failed", withException ? new IllegalStateException("Failed") : null,
+                new Object[]{42, new AbstractMap.SimpleEntry<>("user", "john")});
+        event.setMDCPropertyMap(Collections.singletonMap("requestId", "9f3c2a"));
+        event.prepareForDeferredProcessing();
+    }
+
+    @Benchmark
+    public String doLayout() {
+        return layout.doLayout(event);
+    }
+}
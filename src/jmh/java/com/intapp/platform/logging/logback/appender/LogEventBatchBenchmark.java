@@ -0,0 +1,67 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of assembling a batch of formatted events and draining it in timestamp order, as done by the worker
+ * before each {@code PutLogEvents} request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogEventBatchBenchmark {
+    @Param({"1000", "10000"})
+    private int size;
+
+    /**
+     * Whether events are appended in timestamp order, as from a single thread, or interleaved, as from many threads.
+     */
+    @Param({"true", "false"})
+    private boolean ordered;
+
+    private InputLogEvent[] events;
+    private int[] messageBytes;
+
+    private final LogEventBatch batch = new LogEventBatch();
+    private final List<InputLogEvent> drained = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+
+        events = new InputLogEvent[size];
+        messageBytes = new int[size];
+        for (int i = 0; i < size; i++) {
+            long timestamp = ordered ? now + i : now + random.nextInt(100);
+            String message = "Processed request " + i + " in " + random.nextInt(1000) + " ms";
+            events[i] = new InputLogEvent().withTimestamp(timestamp).withMessage(message);
+            messageBytes[i] = LogEventBatch.utf8Length(message);
+        }
+    }
+
+    /**
+     * Steady state of the worker: the batch and the events of a pooled request are reused.
+     */
+    @Benchmark
+    public List<InputLogEvent> assemble() {
+        for (int i = 0; i < events.length; i++) {
+            batch.add(events[i], messageBytes[i]);
+        }
+        batch.drainTo(drained);
+        return drained;
+    }
+}
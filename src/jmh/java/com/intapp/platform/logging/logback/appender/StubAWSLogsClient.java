@@ -0,0 +1,61 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.logs.AWSLogsAsyncClient;
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogGroupResult;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamResult;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CloudWatch Logs client which accepts all requests locally after the configured latency.
+ * <p>
+ * Asynchronous requests are executed by the inherited implementation on a fixed pool, calling the stubbed
+ * synchronous methods.
+ */
+class StubAWSLogsClient extends AWSLogsAsyncClient {
+    private final long latency;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param latency latency of {@code PutLogEvents} request, in ms
+     * @param threads number of threads executing asynchronous requests
+     */
+    StubAWSLogsClient(long latency, int threads) {
+        super(new BasicAWSCredentials("stub", "stub"), Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "stub-client");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.latency = latency;
+    }
+
+    @Override
+    public CreateLogGroupResult createLogGroup(CreateLogGroupRequest request) {
+        return new CreateLogGroupResult();
+    }
+
+    @Override
+    public CreateLogStreamResult createLogStream(CreateLogStreamRequest request) {
+        return new CreateLogStreamResult();
+    }
+
+    @Override
+    public PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+        if (latency > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return new PutLogEventsResult().withNextSequenceToken(Long.toString(sequence.incrementAndGet()));
+    }
+}
@@ -1,9 +1,17 @@
 package com.intapp.platform.logging;
 
+import com.intapp.platform.logging.logback.appender.OverflowPolicy;
+import com.intapp.platform.logging.logback.appender.OversizePolicy;
+import com.intapp.platform.logging.logback.appender.RoutingRule;
+import com.intapp.platform.logging.logback.appender.ShardKey;
+import com.intapp.platform.logging.logback.sink.SinkType;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Properties for CloudWatch
  */
@@ -17,5 +25,219 @@ public class CloudWatchProperties {
 
     private String region;
 
+    /**
+     * CloudWatch Logs endpoint URL, overriding the one of the region
+     */
+    private String endpoint;
+
+    /**
+     * Where log events are sent: CloudWatch Logs (default), Kinesis Data Firehose, local files or standard output.
+     * {@code FIREHOSE} requires {@code com.amazonaws:aws-java-sdk-kinesis}, which isn't a transitive dependency,
+     * on the classpath; the application fails to start without it
+     */
+    private SinkType sink;
+
+    /**
+     * Firehose delivery stream of {@code FIREHOSE} sink; delivery stream named after the log group is used when not set
+     */
+    private String firehoseDeliveryStream;
+
+    /**
+     * Directory of {@code FILE} sink, with a subdirectory per log group and a file per log stream
+     */
+    private String sinkDirectory;
+
+    /**
+     * Size (in bytes) at which a file of {@code FILE} sink is rolled over
+     */
+    private Long sinkMaxFileSize;
+
+    /**
+     * Number of rolled over files of {@code FILE} sink kept per log stream
+     */
+    private Integer sinkMaxHistory;
+
     private String pattern;
+
+    /**
+     * Format events as single-line JSON objects instead of using {@code pattern}
+     */
+    private Boolean jsonLayout;
+
+    /**
+     * Write stack traces repeated in JSON layout as references to the first event with the same stack trace
+     */
+    private Boolean jsonStackTraceReferences;
+
+    /**
+     * Maximum time (in ms) to wait for more log events before sending a partial batch; actual time adapts to traffic
+     */
+    private Long maxBatchTime;
+
+    /**
+     * Log events of this level or higher are sent without waiting for more events
+     */
+    private String flushLevel;
+
+    /**
+     * Maximum time (in ms) to keep sending queued log events on shutdown; the rest go to the spill directory, if set
+     */
+    private Long maxFlushTime;
+
+    /**
+     * Capacity of the appender internal buffer, in events
+     */
+    private Integer queueCapacity;
+
+    /**
+     * Capacity of the appender internal buffer, in bytes; formatted log events are queued in direct memory when set
+     */
+    private Integer queueBytes;
+
+    /**
+     * Share of the internal buffer reserved for {@code ERROR} and {@code WARN} events
+     */
+    private Double highPriorityShare;
+
+    /**
+     * Share of the internal buffer reserved for {@code DEBUG} and {@code TRACE} events, which are discarded first
+     */
+    private Double lowPriorityShare;
+
+    /**
+     * What to do with logging events when internal buffer is full
+     */
+    private OverflowPolicy overflowPolicy;
+
+    /**
+     * What to do with a log event exceeding event size limit of the sink: truncate it or split it into several events
+     */
+    private OversizePolicy oversizePolicy;
+
+    /**
+     * Maximum time (in ms) to wait for free buffer space with {@code BLOCK} overflow policy
+     */
+    private Long maxBlockTime;
+
+    /**
+     * Format events on appender worker (or formatter threads) instead of logging thread
+     */
+    private Boolean deferredLayout;
+
+    /**
+     * Capture caller data on logging thread when layout is deferred
+     */
+    private Boolean includeCallerData;
+
+    /**
+     * Number of threads formatting events when layout is deferred
+     */
+    private Integer formatterThreads;
+
+    /**
+     * Number of log streams (and appender workers) to spread events across
+     */
+    private Integer shardCount;
+
+    /**
+     * How events are assigned to log stream shards
+     */
+    private ShardKey shardKey;
+
+    /**
+     * Directory for disk spill buffer; spilling is disabled when not set
+     */
+    private String spillDirectory;
+
+    /**
+     * Size of a single spill segment file, in bytes
+     */
+    private Integer spillSegmentSize;
+
+    /**
+     * Maximum number of spill segment files per log stream
+     */
+    private Integer spillMaxSegments;
+
+    /**
+     * Maximum number of retries of a failed request to CloudWatch
+     */
+    private Integer maxRetries;
+
+    /**
+     * Maximum rate of requests to CloudWatch per log stream, per second
+     */
+    private Double maxSendRate;
+
+    /**
+     * Maximum number of requests to CloudWatch in flight per log stream; requests wait for the sequence token of
+     * the previous one, so values greater than 1 keep the next request ready rather than send requests concurrently
+     */
+    private Integer maxInFlightRequests;
+
+    /**
+     * Time window (in ms) for suppression of repeated log events; disabled when not set
+     */
+    private Long duplicateWindow;
+
+    /**
+     * Number of distinct recent log events tracked for duplicate suppression
+     */
+    private Integer duplicateCapacity;
+
+    /**
+     * MDC key of trace (or request) ID enabling tail sampling: low-level events of a trace are held in memory and
+     * sent only if the trace logs a warning or error or is marked as sampled; disabled when not set
+     */
+    private String traceIdKey;
+
+    /**
+     * MDC key marking trace as sampled with "true" value
+     */
+    private String sampledKey;
+
+    /**
+     * Log events of traces below this level are held for tail sampling (INFO by default)
+     */
+    private String samplingLevel;
+
+    /**
+     * Log events of this level or higher make their trace sampled (WARN by default)
+     */
+    private String samplingTriggerLevel;
+
+    /**
+     * Time (in ms) since the last log event of a trace after which its held events are discarded
+     */
+    private Long samplingWindow;
+
+    /**
+     * Maximum number of log events held for tail sampling across all traces
+     */
+    private Integer samplingCapacity;
+
+    /**
+     * Maximum number of log events held for tail sampling per trace
+     */
+    private Integer samplingTraceCapacity;
+
+    /**
+     * Rules routing matching log events to other log groups and/or streams, checked in order
+     */
+    private List<RoutingRule> routes;
+
+    /**
+     * CloudWatch namespace of custom metrics published as embedded metric format log events; enables metrics when set
+     */
+    private String metricsNamespace;
+
+    /**
+     * Aggregation interval (in ms) of custom metrics
+     */
+    private Long metricsInterval;
+
+    /**
+     * Dimensions added to all custom metrics
+     */
+    private Map<String, String> metricsDimensions;
 }
@@ -6,15 +6,35 @@ import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.Layout;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.regions.RegionUtils;
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehoseClient;
+import com.amazonaws.services.logs.AWSLogsAsyncClient;
 import com.amazonaws.services.logs.AWSLogsClient;
 import com.intapp.platform.logging.CloudWatchProperties;
 import com.intapp.platform.logging.logback.appender.AmazonCloudWatchAppender;
+import com.intapp.platform.logging.logback.emf.EmbeddedMetricsConfiguration;
+import com.intapp.platform.logging.logback.layout.JsonLayout;
+import com.intapp.platform.logging.logback.metrics.CloudWatchHealthConfiguration;
+import com.intapp.platform.logging.logback.metrics.CloudWatchMetricsConfiguration;
+import com.intapp.platform.logging.logback.sink.FileSink;
+import com.intapp.platform.logging.logback.sink.FirehoseSink;
+import com.intapp.platform.logging.logback.sink.LogSink;
+import com.intapp.platform.logging.logback.sink.SinkType;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.util.ClassUtils;
 
 import javax.annotation.PostConstruct;
+import java.io.File;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Configuration of CloudWatch logging for Logback backend.
@@ -23,15 +43,41 @@ import javax.annotation.PostConstruct;
  * to prevent it from being accidentally added to Spring context by {@code ComponentScan},
  * enabled in other service from <i>com.intapp.platform</i> package
  */
+@Import({CloudWatchMetricsConfiguration.class, CloudWatchHealthConfiguration.class, EmbeddedMetricsConfiguration.class})
 public class CloudWatchLogbackConfiguration {
+    private static final String FIREHOSE_CLIENT_CLASS =
+            "com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehoseClient";
+
     private CloudWatchProperties cloudWatchProperties;
 
+    private ObjectProvider<AWSLogsClient> awsLogsClientProvider;
+
+    // the class isn't proxied, so bean methods cache their instances for being called from addAppender()
+    private AWSLogsClient awsLogsClient;
+
+    private AmazonCloudWatchAppender appender;
+
+    /**
+     * @param awsLogsClientProvider client defined by the application, if any, which is used instead of the default one
+     */
     @Autowired
-    public CloudWatchLogbackConfiguration(CloudWatchProperties properties) {
+    public CloudWatchLogbackConfiguration(CloudWatchProperties properties,
+                                          ObjectProvider<AWSLogsClient> awsLogsClientProvider) {
         this.cloudWatchProperties = properties;
+        this.awsLogsClientProvider = awsLogsClientProvider;
     }
 
     protected Layout<ILoggingEvent> createLayout(LoggerContext context) {
+        if (Boolean.TRUE.equals(cloudWatchProperties.getJsonLayout())) {
+            JsonLayout jsonLayout = new JsonLayout();
+
+            jsonLayout.setContext(context);
+            jsonLayout.setStackTraceReferences(Boolean.TRUE.equals(cloudWatchProperties.getJsonStackTraceReferences()));
+            jsonLayout.start();
+
+            return jsonLayout;
+        }
+
         PatternLayout patternLayout = new PatternLayout();
 
         patternLayout.setContext(context);
@@ -41,17 +87,80 @@ public class CloudWatchLogbackConfiguration {
         return patternLayout;
     }
 
+    /**
+     * Creates sink of the configured type.
+     * @return sink or {@code null} for CloudWatch Logs one, which the appender creates with its client
+     * @throws IllegalStateException if dependency of the sink isn't on the classpath
+     */
+    protected LogSink createSink() {
+        SinkType type = Optional.ofNullable(cloudWatchProperties.getSink()).orElse(SinkType.CLOUDWATCH_LOGS);
+        switch (type) {
+            case FIREHOSE:
+                // Firehose client is only needed, and only has to be on the classpath, for this sink
+                if (!ClassUtils.isPresent(FIREHOSE_CLIENT_CLASS, getClass().getClassLoader())) {
+                    throw new IllegalStateException("FIREHOSE sink requires com.amazonaws:aws-java-sdk-kinesis "
+                            + "on the classpath, which is an optional dependency of CloudWatch logging");
+                }
+                return Firehose.createSink(cloudWatchProperties);
+            case FILE:
+                return new FileSink(new File(Optional.ofNullable(cloudWatchProperties.getSinkDirectory()).orElse("logs")),
+                        Optional.ofNullable(cloudWatchProperties.getSinkMaxFileSize()).orElse(FileSink.DEFAULT_MAX_FILE_SIZE),
+                        Optional.ofNullable(cloudWatchProperties.getSinkMaxHistory()).orElse(FileSink.DEFAULT_MAX_HISTORY));
+            case STDOUT:
+                return FileSink.stdout();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Creates default client, configured with region and endpoint properties. Appender uses the client as it is
+     * configured and doesn't shut it down; the context does, once the appender is stopped.
+     */
     @Bean
     @ConditionalOnMissingBean(AWSLogsClient.class)
-    public AWSLogsClient awsLogsClient() {
+    public synchronized AWSLogsClient awsLogsClient() {
         //TODO: use AWSLogs instead
-        return new AWSLogsClient();
+        if (awsLogsClient == null) {
+            int maxInFlightRequests = Optional.ofNullable(cloudWatchProperties.getMaxInFlightRequests()).orElse(1);
+            // asynchronous client allows appender to keep several requests in flight, one per thread
+            AWSLogsClient client = maxInFlightRequests > 1
+                    ? new AWSLogsAsyncClient(new DefaultAWSCredentialsProviderChain(),
+                            Executors.newFixedThreadPool(maxInFlightRequests, senderThreadFactory()))
+                    : new AWSLogsClient();
+            // client uses us-east-1 unless another region is set
+            Optional.ofNullable(RegionUtils.getRegion(cloudWatchProperties.getRegion())).ifPresent(client::setRegion);
+            Optional.ofNullable(cloudWatchProperties.getEndpoint()).filter(endpoint -> !endpoint.isEmpty())
+                    .ifPresent(client::setEndpoint);
+            awsLogsClient = client;
+        }
+        return awsLogsClient;
+    }
+
+    private static ThreadFactory senderThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "cloudwatch-logs-sender-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     // TODO: don't treat as bean
-    @Bean(initMethod = "start", destroyMethod = "stop")
+    @Bean(destroyMethod = "stop")
     @ConditionalOnMissingBean(AmazonCloudWatchAppender.class)
-    public Appender<ILoggingEvent> cloudWatchAppender(AWSLogsClient awsLogsClient) {
+    public synchronized Appender<ILoggingEvent> cloudWatchAppender(AWSLogsClient awsLogsClient) {
+        if (appender == null) {
+            appender = createAppender(awsLogsClient);
+        }
+        return appender;
+    }
+
+    /**
+     * Creates and starts the appender. Log group and stream are created asynchronously, so starting doesn't wait
+     * for CloudWatch.
+     */
+    protected AmazonCloudWatchAppender createAppender(AWSLogsClient awsLogsClient) {
         LoggerContext context = getLoggerContext();
         Layout<ILoggingEvent> layout = createLayout(context);
 
@@ -61,8 +170,45 @@ public class CloudWatchLogbackConfiguration {
         cloudWatchAppender.setLogGroup(cloudWatchProperties.getLogGroup());
         cloudWatchAppender.setLogStream(cloudWatchProperties.getLogStream());
         cloudWatchAppender.setRegion(cloudWatchProperties.getRegion());
+        cloudWatchAppender.setEndpoint(cloudWatchProperties.getEndpoint());
+
+        Optional.ofNullable(cloudWatchProperties.getMaxBatchTime()).ifPresent(cloudWatchAppender::setMaxBatchTime);
+        Optional.ofNullable(cloudWatchProperties.getFlushLevel()).ifPresent(cloudWatchAppender::setFlushLevel);
+        Optional.ofNullable(cloudWatchProperties.getMaxFlushTime()).ifPresent(cloudWatchAppender::setMaxFlushTime);
+        Optional.ofNullable(cloudWatchProperties.getQueueCapacity()).ifPresent(cloudWatchAppender::setQueueCapacity);
+        Optional.ofNullable(cloudWatchProperties.getQueueBytes()).ifPresent(cloudWatchAppender::setQueueBytes);
+        Optional.ofNullable(cloudWatchProperties.getHighPriorityShare()).ifPresent(cloudWatchAppender::setHighPriorityShare);
+        Optional.ofNullable(cloudWatchProperties.getLowPriorityShare()).ifPresent(cloudWatchAppender::setLowPriorityShare);
+        Optional.ofNullable(cloudWatchProperties.getOverflowPolicy()).ifPresent(cloudWatchAppender::setOverflowPolicy);
+        Optional.ofNullable(cloudWatchProperties.getMaxBlockTime()).ifPresent(cloudWatchAppender::setMaxBlockTime);
+        Optional.ofNullable(cloudWatchProperties.getOversizePolicy()).ifPresent(cloudWatchAppender::setOversizePolicy);
+        Optional.ofNullable(cloudWatchProperties.getDeferredLayout()).ifPresent(cloudWatchAppender::setDeferredLayout);
+        Optional.ofNullable(cloudWatchProperties.getIncludeCallerData()).ifPresent(cloudWatchAppender::setIncludeCallerData);
+        Optional.ofNullable(cloudWatchProperties.getFormatterThreads()).ifPresent(cloudWatchAppender::setFormatterThreads);
+        Optional.ofNullable(cloudWatchProperties.getShardCount()).ifPresent(cloudWatchAppender::setShardCount);
+        Optional.ofNullable(cloudWatchProperties.getShardKey()).ifPresent(cloudWatchAppender::setShardKey);
+        Optional.ofNullable(cloudWatchProperties.getSpillDirectory()).ifPresent(cloudWatchAppender::setSpillDirectory);
+        Optional.ofNullable(cloudWatchProperties.getSpillSegmentSize()).ifPresent(cloudWatchAppender::setSpillSegmentSize);
+        Optional.ofNullable(cloudWatchProperties.getSpillMaxSegments()).ifPresent(cloudWatchAppender::setSpillMaxSegments);
+        Optional.ofNullable(cloudWatchProperties.getMaxRetries()).ifPresent(cloudWatchAppender::setMaxRetries);
+        Optional.ofNullable(cloudWatchProperties.getMaxSendRate()).ifPresent(cloudWatchAppender::setMaxSendRate);
+        Optional.ofNullable(cloudWatchProperties.getMaxInFlightRequests())
+                .ifPresent(cloudWatchAppender::setMaxInFlightRequests);
+        Optional.ofNullable(cloudWatchProperties.getDuplicateWindow()).ifPresent(cloudWatchAppender::setDuplicateWindow);
+        Optional.ofNullable(cloudWatchProperties.getDuplicateCapacity()).ifPresent(cloudWatchAppender::setDuplicateCapacity);
+        Optional.ofNullable(cloudWatchProperties.getTraceIdKey()).ifPresent(cloudWatchAppender::setTraceIdKey);
+        Optional.ofNullable(cloudWatchProperties.getSampledKey()).ifPresent(cloudWatchAppender::setSampledKey);
+        Optional.ofNullable(cloudWatchProperties.getSamplingLevel()).ifPresent(cloudWatchAppender::setSamplingLevel);
+        Optional.ofNullable(cloudWatchProperties.getSamplingTriggerLevel())
+                .ifPresent(cloudWatchAppender::setSamplingTriggerLevel);
+        Optional.ofNullable(cloudWatchProperties.getSamplingWindow()).ifPresent(cloudWatchAppender::setSamplingWindow);
+        Optional.ofNullable(cloudWatchProperties.getSamplingCapacity()).ifPresent(cloudWatchAppender::setSamplingCapacity);
+        Optional.ofNullable(cloudWatchProperties.getSamplingTraceCapacity())
+                .ifPresent(cloudWatchAppender::setSamplingTraceCapacity);
+        Optional.ofNullable(cloudWatchProperties.getRoutes()).ifPresent(routes -> routes.forEach(cloudWatchAppender::addRoute));
 
         cloudWatchAppender.setAwsLogsClient(awsLogsClient);
+        cloudWatchAppender.setSink(createSink());
         cloudWatchAppender.setLayout(layout);
 
         cloudWatchAppender.start();
@@ -72,7 +218,7 @@ public class CloudWatchLogbackConfiguration {
 
     @PostConstruct
     protected void addAppender() {
-        AWSLogsClient client = awsLogsClient();
+        AWSLogsClient client = Optional.ofNullable(awsLogsClientProvider.getIfAvailable()).orElseGet(this::awsLogsClient);
         Appender<ILoggingEvent> appender = cloudWatchAppender(client);
 
         LoggerContext loggerContext = getLoggerContext();
@@ -83,7 +229,26 @@ public class CloudWatchLogbackConfiguration {
         rootLogger.warn("LOGBACK: [{}] APPENDER WAS ADDED!", appender.getName());
     }
 
+    /**
+     * @return appender added to the root logger
+     */
+    public AmazonCloudWatchAppender getAppender() {
+        return appender;
+    }
+
     protected LoggerContext getLoggerContext() {
         return (LoggerContext) LoggerFactory.getILoggerFactory();
     }
+
+    /**
+     * Refers to Firehose client classes, so that they are loaded only when the sink is used.
+     */
+    private static final class Firehose {
+
+        static LogSink createSink(CloudWatchProperties properties) {
+            AmazonKinesisFirehoseClient client = new AmazonKinesisFirehoseClient();
+            Optional.ofNullable(RegionUtils.getRegion(properties.getRegion())).ifPresent(client::setRegion);
+            return new FirehoseSink(client, properties.getFirehoseDeliveryStream());
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.intapp.platform.logging.logback.appender;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits rate of {@code PutLogEvents} requests with additive-increase/multiplicative-decrease control:
+ * the rate is halved each time the service throttles a request and grows by a fixed step after each successful one,
+ * converging to the highest rate the service currently accepts.
+ */
+class AdaptiveRateLimiter {
+    private static final double MIN_RATE = 0.5;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double INCREASE_STEP = 1;
+
+    private final double maxRate;
+
+    private double rate;
+    private long nextPermitTime = System.nanoTime();
+
+    /**
+     * @param maxRate maximum number of requests per second
+     */
+    AdaptiveRateLimiter(double maxRate) {
+        this.maxRate = Math.max(MIN_RATE, maxRate);
+        this.rate = this.maxRate;
+    }
+
+    /**
+     * Reserves permit for the next request.
+     * @return time to wait before sending the request, in ns
+     */
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        long wait = Math.max(0, nextPermitTime - now);
+        nextPermitTime = Math.max(nextPermitTime, now) + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        return wait;
+    }
+
+    /**
+     * Waits for permit for the next request.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + INCREASE_STEP);
+    }
+
+    synchronized void onThrottle() {
+        rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+    }
+
+    /**
+     * @return current request rate limit, per second
+     */
+    synchronized double getRate() {
+        return rate;
+    }
+}
@@ -1,25 +1,47 @@
 package com.intapp.platform.logging.logback.appender;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Layout;
 import ch.qos.logback.core.UnsynchronizedAppenderBase;
 import ch.qos.logback.core.layout.EchoLayout;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.regions.RegionUtils;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.services.logs.AWSLogsAsync;
+import com.amazonaws.services.logs.AWSLogsAsyncClient;
 import com.amazonaws.services.logs.AWSLogsClient;
-import com.amazonaws.services.logs.model.*;
+import com.amazonaws.services.logs.model.InputLogEvent;
 import com.amazonaws.util.StringUtils;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Ordering;
-import com.google.common.collect.Queues;
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import com.intapp.platform.logging.logback.sink.LogSink;
+import com.intapp.platform.logging.logback.sink.SinkLimits;
 import lombok.NonNull;
 import lombok.Setter;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static java.lang.String.format;
 
@@ -29,10 +51,34 @@ import static java.lang.String.format;
 })
 public class AmazonCloudWatchAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
 
-    private static final int DEFAULT_MAX_BATCH_SIZE = 512;
     private static final int DEFAULT_MAX_BATCH_TIME = 1000;
+    private static final int MIN_BATCH_TIME = 10;
     private static final int DEFAULT_INTERNAL_QUEUE_SIZE = 8192;
     private static final int DEFAULT_MAX_FLUSH_TIME = 3000;
+    private static final long MAX_ABORT_TIME = 500;
+    private static final int DEFAULT_MAX_BLOCK_TIME = 100;
+    private static final int FORMAT_CHUNK_SIZE = 256;
+    private static final int DEFAULT_SPILL_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_SPILL_MAX_SEGMENTS = 16;
+    private static final int DEFAULT_MAX_RETRIES = 5;
+    private static final double DEFAULT_MAX_SEND_RATE = 50;
+    private static final long RETRY_BASE_DELAY = 100;
+    private static final long RETRY_MAX_DELAY = 10000;
+    private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 1;
+    private static final int DEFAULT_DUPLICATE_CAPACITY = 1024;
+    private static final long DEFAULT_SAMPLING_WINDOW = 30000;
+    private static final int DEFAULT_SAMPLING_CAPACITY = 10000;
+    private static final int DEFAULT_SAMPLING_TRACE_CAPACITY = 200;
+    private static final int MIN_SHARD_QUEUE_BYTES = 1 << 20;
+    private static final int CIRCUIT_BREAKER_THRESHOLD = 5;
+    private static final long CIRCUIT_BREAKER_MIN_OPEN_TIME = 5000;
+    private static final long CIRCUIT_BREAKER_MAX_OPEN_TIME = 60000;
+    private static final long DROP_WARNING_INTERVAL = 10000;
+    private static final long PROVISION_ERROR_INTERVAL = 60000;
+    private static final double DEFAULT_HIGH_PRIORITY_SHARE = 0.25;
+    private static final double DEFAULT_LOW_PRIORITY_SHARE = 0.25;
+    private static final int MAX_ROUTE_CACHE_SIZE = 4096;
+    private static final Route[] NO_ROUTES = new Route[0];
 
     private static final String DEFAULT_NAME = "CLOUDWATCH";
     private static final String DEFAULT_REGION = "us-east-1";
@@ -59,21 +105,251 @@ public class AmazonCloudWatchAppender extends UnsynchronizedAppenderBase<ILoggin
     private String region;
 
     /**
-     * AWS API client which will be used for log publishing.
-     * Default one will be created if another isn't provided.
+     * CloudWatch Logs endpoint URL, overriding the one of the region, e.g. for VPC endpoint or local stand-in service.
+     */
+    @Setter
+    private String endpoint;
+
+    /**
+     * AWS API client which will be used for log publishing by the default CloudWatch Logs sink.
+     * Default one, configured with {@code region} and {@code endpoint}, will be created if another isn't provided.
+     * Provided client is used as it is configured, and isn't shut down when the appender stops.
      */
     @Setter
     private AWSLogsClient awsLogsClient;
 
+    /**
+     * Transport delivering batches of events, e.g. to Kinesis Data Firehose or local files. CloudWatch Logs sink
+     * using {@code awsLogsClient} is created if another isn't provided. Queuing, batching within the sink limits,
+     * retries and spilling work the same way for any sink.
+     */
+    @Setter
+    private LogSink sink;
+
     /**
      * Logback layout for log lines formatting.
      */
     @Setter
     private Layout<ILoggingEvent> layout;
 
-    private LinkedBlockingQueue<InputLogEvent> logEventsQueue;
-    private Worker worker;
+    /**
+     * Maximum time (in ms) to wait for more events before sending a partial batch. Actual time adapts to traffic,
+     * request latency and throttling, and is usually much shorter.
+     */
+    @Setter
+    private long maxBatchTime = DEFAULT_MAX_BATCH_TIME;
+
+    /**
+     * Events of this level or higher are sent without waiting for more events.
+     */
+    private Level flushLevel = Level.ERROR;
+
+    /**
+     * Maximum time (in ms) to keep sending queued events on stop. Workers of all log streams flush in parallel,
+     * in full batches and higher priority events first; events left after the deadline are written to spill buffer,
+     * if configured, or discarded.
+     */
+    @Setter
+    private long maxFlushTime = DEFAULT_MAX_FLUSH_TIME;
+
+    /**
+     * Capacity of the internal buffer, in events. It's split between shards and priority lanes, and each part is rounded
+     * up to the power of two.
+     */
+    @Setter
+    private int queueCapacity = DEFAULT_INTERNAL_QUEUE_SIZE;
+
+    /**
+     * Capacity of the internal buffer, in bytes. When positive, formatted events are queued as UTF-8 in pooled direct
+     * memory instead of strings on the heap, and the buffer is bounded by their size rather than by
+     * {@code queueCapacity}. It's split between shards, and priority lanes share it, with higher priority events
+     * taking the place of lower priority ones when it's full. Doesn't apply with deferred layout, which queues
+     * unformatted events.
+     */
+    @Setter
+    private int queueBytes;
+
+    /**
+     * Share of the internal buffer reserved for {@code ERROR} and {@code WARN} events.
+     * {@code INFO} events take the rest of the buffer, except for the part reserved for {@code DEBUG} and
+     * {@code TRACE} events. When its lane is full, an event takes the place of a lower priority one, if there is any.
+     */
+    @Setter
+    private double highPriorityShare = DEFAULT_HIGH_PRIORITY_SHARE;
+
+    /**
+     * Share of the internal buffer reserved for {@code DEBUG} and {@code TRACE} events, which are discarded first
+     * when the buffer is full.
+     */
+    @Setter
+    private double lowPriorityShare = DEFAULT_LOW_PRIORITY_SHARE;
+
+    /**
+     * What to do with a logging event when internal buffer is full.
+     */
+    @Setter
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    /**
+     * Maximum time (in ms) to wait for free buffer space with {@link OverflowPolicy#BLOCK} policy.
+     */
+    @Setter
+    private long maxBlockTime = DEFAULT_MAX_BLOCK_TIME;
+
+    /**
+     * What to do with a logging event exceeding event size limit of the sink.
+     */
+    @Setter
+    private OversizePolicy oversizePolicy = OversizePolicy.TRUNCATE;
+
+    /**
+     * Defers layout formatting to the worker (or formatter threads), so logging thread only captures the event.
+     */
+    @Setter
+    private boolean deferredLayout;
+
+    /**
+     * Captures caller data on logging thread for deferred layout. Required by layouts printing caller file, method
+     * or line, but expensive to obtain.
+     */
+    @Setter
+    private boolean includeCallerData;
+
+    /**
+     * Number of threads which format events for deferred layout. When {@code 0}, events are formatted by the worker.
+     */
+    @Setter
+    private int formatterThreads;
+
+    /**
+     * Number of log streams to spread events across, each one with its own worker.
+     * Streams are named {@code <logStream>-0..N-1} when more than one shard is used.
+     */
+    @Setter
+    private int shardCount = 1;
+
+    /**
+     * How events are assigned to shards. Order of events is preserved within a shard.
+     */
+    @Setter
+    private ShardKey shardKey = ShardKey.THREAD;
+
+    /**
+     * Directory for disk spill buffer. When set, events which don't fit into internal queue or can't be sent to
+     * CloudWatch are written to memory-mapped segment files and replayed later, including after restart.
+     */
+    @Setter
+    private String spillDirectory;
+
+    /**
+     * Size of a single spill segment file, in bytes.
+     */
+    @Setter
+    private int spillSegmentSize = DEFAULT_SPILL_SEGMENT_SIZE;
+
+    /**
+     * Maximum number of spill segment files per log stream, bounding disk space used by spill buffer.
+     */
+    @Setter
+    private int spillMaxSegments = DEFAULT_SPILL_MAX_SEGMENTS;
+
+    /**
+     * Maximum number of retries of a failed request to the sink, e.g. {@code PutLogEvents} one.
+     */
+    @Setter
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * Maximum rate of requests to the sink per log stream, per second.
+     * Actual rate is lowered automatically while the service throttles requests.
+     */
+    @Setter
+    private double maxSendRate = DEFAULT_MAX_SEND_RATE;
+
+    /**
+     * Maximum number of concurrent requests to the sink per log stream. Values greater than {@code 1} require
+     * asynchronous sink, e.g. CloudWatch Logs one with asynchronous client ({@link AWSLogsAsync}); requests are
+     * pipelined and completed with callbacks, so the worker keeps assembling batches while previous requests are
+     * in flight. CloudWatch Logs sink still sends requests of a stream one at a time, as each of them needs
+     * the sequence token returned by the previous one, but the next request is sent as soon as the previous one
+     * completes, without waiting for the worker.
+     */
+    @Setter
+    private int maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+
+    /**
+     * Time window (in ms) for suppression of repeated events. When positive, an event with the same logger, level,
+     * message template and throwable as a recent one is only counted, and a "repeated N times" summary is logged
+     * when the window ends.
+     */
+    @Setter
+    private long duplicateWindow;
+
+    /**
+     * Number of distinct recent events tracked for duplicate suppression.
+     */
+    @Setter
+    private int duplicateCapacity = DEFAULT_DUPLICATE_CAPACITY;
+
+    /**
+     * MDC key of trace (or request) ID enabling tail sampling. When set, events of a trace below
+     * {@code samplingLevel} are held in memory and sent only if the trace logs an event of
+     * {@code samplingTriggerLevel} or higher or is marked as sampled, otherwise they are discarded.
+     * Events without trace ID are sent as usual.
+     */
+    @Setter
+    private String traceIdKey;
+
+    /**
+     * MDC key marking trace as sampled with {@code "true"} value, e.g. when the caller decided to keep the trace.
+     */
+    @Setter
+    private String sampledKey;
+
+    /**
+     * Events of traces below this level are held for tail sampling.
+     */
+    private Level samplingLevel = Level.INFO;
+
+    /**
+     * Events of this level or higher make their trace sampled, releasing its held events.
+     */
+    private Level samplingTriggerLevel = Level.WARN;
+
+    /**
+     * Time (in ms) since the last event of a trace after which its held events are discarded.
+     */
+    @Setter
+    private long samplingWindow = DEFAULT_SAMPLING_WINDOW;
+
+    /**
+     * Maximum number of events held for tail sampling, and of traces tracked, across all traces.
+     */
+    @Setter
+    private int samplingCapacity = DEFAULT_SAMPLING_CAPACITY;
+
+    /**
+     * Maximum number of events held for tail sampling per trace; the oldest ones are discarded first.
+     */
+    @Setter
+    private int samplingTraceCapacity = DEFAULT_SAMPLING_TRACE_CAPACITY;
+
+    private final List<RoutingRule> routingRules = new ArrayList<>();
+    private final ConcurrentMap<String, Route[]> routeCache = new ConcurrentHashMap<>();
+
+    private final AppenderMetrics metrics = new AppenderMetrics();
+    private final ConcurrentMap<String, DropCount> drops = new ConcurrentHashMap<>();
+
+    private ExecutorService formatterPool;
+    private ScheduledExecutorService scheduler;
+    private DuplicateFilter duplicateFilter;
+    private TailSampler tailSampler;
+    private Worker[] workers;
+    private Destination destination;
+    private Route[] routes = NO_ROUTES;
     private Thread shutdownHook;
+    private boolean defaultSink;
+    private boolean defaultClient;
 
     public AmazonCloudWatchAppender() {
         this(DEFAULT_NAME);
@@ -83,8 +359,33 @@ public class AmazonCloudWatchAppender extends UnsynchronizedAppenderBase<ILoggin
         this.name = name;
     }
 
+    public void setFlushLevel(String level) {
+        this.flushLevel = Level.toLevel(level, Level.ERROR);
+    }
+
+    public void setSamplingLevel(String level) {
+        this.samplingLevel = Level.toLevel(level, Level.INFO);
+    }
+
+    public void setSamplingTriggerLevel(String level) {
+        this.samplingTriggerLevel = Level.toLevel(level, Level.WARN);
+    }
+
+    /**
+     * Adds rule routing matching events to another log group and/or stream. Each distinct destination has its own
+     * workers, batches and sequence tokens, while the client, its connection pool and sender threads are shared.
+     * @param rule routing rule, checked after previously added ones
+     */
+    public void addRoute(RoutingRule rule) {
+        routingRules.add(rule);
+    }
+
     @Override
     public void start() {
+        if (isStarted()) {
+            return;
+        }
+
         if (StringUtils.isNullOrEmpty(logGroup)) {
             String message = format("CloudWatch log group name is not set for appender %s", getName());
 
@@ -100,13 +401,40 @@ public class AmazonCloudWatchAppender extends UnsynchronizedAppenderBase<ILoggin
             System.err.println(message);    // duplicating error message in console as there can be no more appenders
             return;
         }
-        if (RegionUtils.getRegion(region) == null) {
-            region = DEFAULT_REGION;
+        if (overflowPolicy == null) {
+            overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        }
 
-            String message = format("AWS region is not set for appender, falling back to %s", region);
+        if (oversizePolicy == null) {
+            oversizePolicy = OversizePolicy.TRUNCATE;
+        }
 
-            addWarn(message);
-            System.err.println(message);    // duplicating error message in console as there can be no more appenders
+        if (shardCount < 1) {
+            addWarn(format("Invalid shard count %d for appender %s, falling back to single log stream", shardCount,
+                    getName()));
+            shardCount = 1;
+        }
+
+        if (shardKey == null) {
+            shardKey = ShardKey.THREAD;
+        }
+
+        if (queueBytes > 0 && deferredLayout) {
+            addWarn(format("Queue size in bytes doesn't apply to deferred layout of appender %s, queue capacity %d "
+                    + "is used instead", getName(), queueCapacity));
+            queueBytes = 0;
+        } else if (queueBytes > 0 && queueBytes / shardCount < MIN_SHARD_QUEUE_BYTES) {
+            addWarn(format("Queue size %d bytes of appender %s is too small, falling back to %d bytes per shard",
+                    queueBytes, getName(), MIN_SHARD_QUEUE_BYTES));
+            queueBytes = MIN_SHARD_QUEUE_BYTES * shardCount;
+        }
+
+        if (highPriorityShare <= 0 || lowPriorityShare <= 0 || highPriorityShare + lowPriorityShare >= 1) {
+            addWarn(format("Invalid priority shares %.2f and %.2f for appender %s, falling back to %.2f and %.2f",
+                    highPriorityShare, lowPriorityShare, getName(), DEFAULT_HIGH_PRIORITY_SHARE,
+                    DEFAULT_LOW_PRIORITY_SHARE));
+            highPriorityShare = DEFAULT_HIGH_PRIORITY_SHARE;
+            lowPriorityShare = DEFAULT_LOW_PRIORITY_SHARE;
         }
 
         if (layout == null) {
@@ -118,171 +446,1424 @@ public class AmazonCloudWatchAppender extends UnsynchronizedAppenderBase<ILoggin
             System.err.println(message);    // duplicating error message in console as there can be no more appenders
         }
 
-        if (awsLogsClient == null) {
-            awsLogsClient = new AWSLogsClient();
+        if (sink == null && !createSink()) {
+            return;
+        }
+
+        if (maxInFlightRequests > 1 && !sink.isAsync()) {
+            addWarn(format("Sink %s doesn't support asynchronous requests, falling back to single in-flight request",
+                    sink.getClass().getName()));
+            maxInFlightRequests = 1;
+        } else if (maxInFlightRequests < 1) {
+            maxInFlightRequests = 1;
         }
 
         doStart();
         super.start();
     }
 
-    private void doStart() {
+    /**
+     * Creates CloudWatch Logs sink with the provided client or a default one, configured for the region and endpoint.
+     * @return {@code true} if sink was created
+     */
+    private boolean createSink() {
+        if (awsLogsClient == null && !createClient()) {
+            return false;
+        }
+
+        // provided client belongs to the application, which may still use it after the appender stops
+        sink = new CloudWatchLogsSink(awsLogsClient, defaultClient);
+        defaultSink = true;
+        return true;
+    }
+
+    /**
+     * Creates default client, configured for the region and endpoint.
+     * @return {@code true} if client was created
+     */
+    private boolean createClient() {
+        if (RegionUtils.getRegion(region) == null) {
+            region = DEFAULT_REGION;
+
+            String message = format("AWS region is not set for appender, falling back to %s", region);
+
+            addWarn(message);
+            System.err.println(message);    // duplicating error message in console as there can be no more appenders
+        }
+
+        AWSLogsClient client = maxInFlightRequests > 1
+                ? new AWSLogsAsyncClient(new DefaultAWSCredentialsProviderChain(),
+                        Executors.newFixedThreadPool(maxInFlightRequests, daemonThreadFactory("sender")))
+                : new AWSLogsClient();
         try {
-            awsLogsClient.setRegion(RegionUtils.getRegion(region));
-            try {
-                awsLogsClient.createLogGroup(new CreateLogGroupRequest().withLogGroupName(logGroup));
-            } catch (ResourceAlreadyExistsException ex) {
-                addInfo(ex.getMessage(), ex);
+            client.setRegion(RegionUtils.getRegion(region));
+            if (!StringUtils.isNullOrEmpty(endpoint)) {
+                client.setEndpoint(endpoint);
             }
-            try {
-                awsLogsClient.createLogStream(new CreateLogStreamRequest().withLogGroupName(logGroup).withLogStreamName(logStream));
-            } catch (ResourceAlreadyExistsException ex) {
-                addInfo(ex.getMessage(), ex);
+        } catch (AmazonClientException | IllegalArgumentException ex) {
+            client.shutdown();
+            addError(ex.getMessage(), ex);
+            return false;
+        }
+
+        awsLogsClient = client;
+        defaultClient = true;
+        return true;
+    }
+
+    private void doStart() {
+        Map<String, Destination> destinations = new LinkedHashMap<>();
+        Destination defaultDestination = new Destination(logGroup, logStream);
+        destinations.put(defaultDestination.getKey(), defaultDestination);
+        List<Route> resolvedRoutes = new ArrayList<>(routingRules.size());
+        for (RoutingRule rule : routingRules) {
+            Destination target = new Destination(
+                    StringUtils.isNullOrEmpty(rule.getLogGroup()) ? logGroup : rule.getLogGroup(),
+                    StringUtils.isNullOrEmpty(rule.getLogStream()) ? logStream : rule.getLogStream());
+            Destination existing = destinations.putIfAbsent(target.getKey(), target);
+            resolvedRoutes.add(new Route(rule, existing != null ? existing : target));
+        }
+
+        if (deferredLayout && formatterThreads > 0) {
+            formatterPool = Executors.newFixedThreadPool(formatterThreads, daemonThreadFactory("formatter"));
+        }
+
+        boolean sampling = !StringUtils.isNullOrEmpty(traceIdKey);
+        if (sampling) {
+            if (samplingWindow <= 0) {
+                addWarn(format("Invalid sampling window %d ms for appender %s, falling back to %d ms", samplingWindow,
+                        getName(), DEFAULT_SAMPLING_WINDOW));
+                samplingWindow = DEFAULT_SAMPLING_WINDOW;
+            }
+            if (samplingCapacity < 1 || samplingTraceCapacity < 1) {
+                addWarn(format("Invalid sampling capacity %d (%d per trace) for appender %s, falling back to %d (%d)",
+                        samplingCapacity, samplingTraceCapacity, getName(), DEFAULT_SAMPLING_CAPACITY,
+                        DEFAULT_SAMPLING_TRACE_CAPACITY));
+                samplingCapacity = DEFAULT_SAMPLING_CAPACITY;
+                samplingTraceCapacity = DEFAULT_SAMPLING_TRACE_CAPACITY;
             }
+        }
 
-        } catch (AmazonClientException ex) {
-            this.awsLogsClient = null;
-            addError(ex.getMessage(), ex);
-            return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("scheduler"));
+        scheduler.scheduleAtFixedRate(this::reportDropped, DROP_WARNING_INTERVAL, DROP_WARNING_INTERVAL,
+                TimeUnit.MILLISECONDS);
+
+        if (duplicateWindow > 0) {
+            DuplicateFilter filter = new DuplicateFilter(duplicateWindow, duplicateCapacity);
+            scheduler.scheduleAtFixedRate(() -> filter.sweep(System.currentTimeMillis(), this::appendSummary),
+                    duplicateWindow, duplicateWindow, TimeUnit.MILLISECONDS);
+            duplicateFilter = filter;
         }
 
-        logEventsQueue = new LinkedBlockingQueue<>(DEFAULT_INTERNAL_QUEUE_SIZE);
+        if (sampling) {
+            TailSampler sampler = new TailSampler(traceIdKey, sampledKey, samplingLevel, samplingTriggerLevel,
+                    samplingWindow, samplingCapacity, samplingTraceCapacity, includeCallerData, metrics::onUnsampled);
+            scheduler.scheduleAtFixedRate(() -> sampler.sweep(System.currentTimeMillis()), samplingWindow,
+                    samplingWindow, TimeUnit.MILLISECONDS);
+            tailSampler = sampler;
+        }
 
         shutdownHook = new Thread(this::stop);
         shutdownHook.setName(SHUTDOWN_HOOK_THREAD_NAME);
         Runtime.getRuntime().addShutdownHook(shutdownHook);
 
-        worker = new Worker(this);
-        worker.setName(format("%s-worker", getName()));
-        worker.setDaemon(true);
-        worker.start();
+        SinkLimits limits = sink.getLimits();
+        // every queued event takes at least a page of the arena, so the arena is what limits the queue
+        int shardBytes = queueBytes / shardCount;
+        int shardCapacity = queueBytes > 0 ? shardBytes / EventArena.PAGE_SIZE : Math.max(1, queueCapacity / shardCount);
+        int highCapacity = Math.max(1, (int) (shardCapacity * highPriorityShare));
+        int lowCapacity = Math.max(1, (int) (shardCapacity * lowPriorityShare));
+        int normalCapacity = Math.max(1, shardCapacity - highCapacity - lowCapacity);
+        List<Worker> allWorkers = new ArrayList<>(destinations.size() * shardCount);
+        for (Destination target : destinations.values()) {
+            target.shards = new Worker[shardCount];
+            for (int shard = 0; shard < shardCount; shard++) {
+                String shardLogStream = getShardLogStream(target.logStream, shard);
+                Worker worker = new Worker(this, target.logGroup, shardLogStream, limits,
+                        new PriorityBuffer<>(highCapacity, normalCapacity, lowCapacity, LogEntry::getPriority),
+                        queueBytes > 0 ? new EventArena(shardBytes) : null,
+                        createSpillBuffer(target.logGroup, shardLogStream, limits));
+                worker.setName(destinations.size() * shardCount == 1 ? format("%s-worker", getName())
+                        : format("%s-worker-%d", getName(), allWorkers.size()));
+                worker.setDaemon(true);
+                target.shards[shard] = worker;
+                allWorkers.add(worker);
+            }
+        }
+
+        // destinations are opened by workers, so that starting doesn't wait for CloudWatch
+        destination = defaultDestination;
+        routes = resolvedRoutes.toArray(NO_ROUTES);
+        routeCache.clear();
+        workers = allWorkers.toArray(new Worker[0]);
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    private ThreadFactory daemonThreadFactory(String role) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, format("%s-%s-%d", getName(), role, count.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Opens spill buffer for the log stream, if spill directory is configured.
+     * @return spill buffer or {@code null} if spilling is disabled or not possible
+     */
+    private SpillBuffer createSpillBuffer(String group, String stream, SinkLimits limits) {
+        if (StringUtils.isNullOrEmpty(spillDirectory)) {
+            return null;
+        }
+
+        File directory = new File(new File(spillDirectory, toFileName(group)), toFileName(stream));
+        try {
+            return new SpillBuffer(directory, spillSegmentSize, spillMaxSegments, limits);
+        } catch (IOException | IllegalArgumentException ex) {
+            addError(format("Failed to open spill buffer in %s, events for '%s' won't be spilled to disk", directory,
+                    stream), ex);
+            return null;
+        }
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * @return name of the log stream for the given shard
+     */
+    private String getShardLogStream(String stream, int shard) {
+        return shardCount == 1 ? stream : format("%s-%d", stream, shard);
     }
 
     @Override
     public void stop() {
         if (isStarted()) {
-            if (worker != null) {
-                worker.stopGracefully();
-                try {
-                    worker.join(DEFAULT_MAX_FLUSH_TIME);
-                    if (worker.isAlive()) {
-                        addWarn(format(
-                                "Max queue flush timeout (%d ms) exceeded, approximately %d queued events were possibly "
-                                        + "discarded",
-                                DEFAULT_MAX_FLUSH_TIME, logEventsQueue.size()));
-                    }
-                } catch (InterruptedException ex) {
-                    addError(format("Stopping was interrupted, approximately %d queued events may be discarded",
-                            logEventsQueue.size()), ex);
-                }
-                worker = null;
+            if (duplicateFilter != null) {
+                duplicateFilter.flush(System.currentTimeMillis(), this::appendSummary);
+                duplicateFilter = null;
+            }
+
+            // held events belong to traces which weren't sampled
+            if (tailSampler != null) {
+                tailSampler.clear();
+                tailSampler = null;
+            }
+
+            reportDropped();
+            long start = System.currentTimeMillis();
+            long sent = metrics.getSentEvents();
+            long spilled = metrics.getSpilledEvents();
+            long dropped = metrics.getDroppedEvents();
+            Worker[] stoppedWorkers = workers;
+            if (stoppedWorkers != null) {
+                flush(stoppedWorkers, start + maxFlushTime);
+            }
+
+            if (formatterPool != null) {
+                formatterPool.shutdown();
+                formatterPool = null;
+            }
+
+            if (scheduler != null) {
+                // delayed requests which are still waiting are spilled when workers are closed
+                scheduler.shutdownNow();
+                scheduler = null;
             }
 
             if (shutdownHook != null && !SHUTDOWN_HOOK_THREAD_NAME.equals(Thread.currentThread().getName())) {
                 Runtime.getRuntime().removeShutdownHook(shutdownHook);
             }
 
-            if (logEventsQueue != null) {
-                logEventsQueue.clear();
-                logEventsQueue = null;
+            if (stoppedWorkers != null) {
+                for (Worker worker : stoppedWorkers) {
+                    worker.close();
+                }
+                workers = null;
             }
 
-            if (awsLogsClient != null) {
-                awsLogsClient.shutdown();
-                awsLogsClient = null;
+            if (sink != null) {
+                sink.shutdown();
+                // sink provided by the application is shut down as well, but isn't replaced with default one on restart
+                if (defaultSink) {
+                    sink = null;
+                    defaultSink = false;
+                }
+                // so is the client provided by the application, which isn't shut down
+                if (defaultClient) {
+                    awsLogsClient = null;
+                    defaultClient = false;
+                }
             }
 
+            if (stoppedWorkers != null) {
+                int inFlightEvents = 0;
+                for (Worker worker : stoppedWorkers) {
+                    inFlightEvents += worker.inFlightEvents.get();
+                }
+                reportFlush(System.currentTimeMillis() - start, metrics.getSentEvents() - sent,
+                        metrics.getSpilledEvents() - spilled, metrics.getDroppedEvents() - dropped, inFlightEvents);
+            }
+            // events discarded while stopping are reported in the flush summary
+            drops.clear();
             super.stop();
             layout.stop();
         }
     }
 
-    private void handle(final ILoggingEvent event) throws Exception {
-        InputLogEvent logEvent = new InputLogEvent().withTimestamp(event.getTimeStamp()).withMessage(layout.doLayout(event));
-        if (!logEventsQueue.offer(logEvent, DEFAULT_MAX_FLUSH_TIME, TimeUnit.MILLISECONDS)) {
-            addWarn(format("No space available in internal queue after %d ms waiting, logging event was discarded",
-                    DEFAULT_MAX_FLUSH_TIME));
+    /**
+     * Stops workers and waits for them to send queued events until the deadline. Workers flush in parallel,
+     * so the deadline is shared by all log streams.
+     */
+    private void flush(Worker[] stoppedWorkers, long deadline) {
+        for (Worker worker : stoppedWorkers) {
+            worker.stopGracefully(deadline);
         }
-    }
-
-    @Override
-    protected void append(ILoggingEvent event) {
         try {
-            handle(event);
-        } catch (Exception ex) {
-            this.started = false;
-            addError(format("Failed to handle logging event for '%s'", getName()), ex);
+            // request in progress at the deadline may still complete, but no new one is started
+            for (Worker worker : stoppedWorkers) {
+                worker.join(Math.max(1, deadline + MAX_ABORT_TIME - System.currentTimeMillis()));
+            }
+            // request outliving that is aborted, so that its worker hands remaining events over on close
+            for (Worker worker : stoppedWorkers) {
+                if (worker.isAlive()) {
+                    worker.interrupt();
+                    worker.join(MAX_ABORT_TIME);
+                }
+            }
+        } catch (InterruptedException ex) {
+            addError(format("Stopping was interrupted, approximately %d queued events may be discarded",
+                    getQueuedCount()), ex);
         }
     }
 
+    /**
+     * Reports what happened to events buffered when stopping started, and to events appended meanwhile.
+     */
+    private void reportFlush(long elapsed, long sent, long spilled, long discarded, int inFlight) {
+        String message = format("Appender %s flushed %d events in %d ms on stop, %d events were spilled to disk, "
+                + "%d were discarded and %d were still in flight", getName(), sent, elapsed, spilled, discarded, inFlight);
+        if (discarded > 0 || inFlight > 0) {
+            addWarn(message);
+        } else {
+            addInfo(message);
+        }
+    }
 
-    private static class Worker extends Thread {
-
-        private static final Ordering<InputLogEvent> ORDERING = new Ordering<InputLogEvent>() {
-            @Override
-            public int compare(InputLogEvent left, InputLogEvent right) {
-                return left.getTimestamp().compareTo(right.getTimestamp());
+    private void handle(final ILoggingEvent event) throws Exception {
+        LogEntry logEvent;
+        if (deferredLayout) {
+            event.prepareForDeferredProcessing();
+            if (includeCallerData) {
+                event.getCallerData();
             }
-        };
-
+            logEvent = LogEntry.deferred(event);
+        } else {
+            logEvent = LogEntry.formatted(event.getTimeStamp(), layout.doLayout(event));
+        }
+        if (event.getLevel().isGreaterOrEqual(flushLevel)) {
+            logEvent.setFlushNow();
+        }
+        enqueue(selectWorker(event), logEvent, Priority.of(event.getLevel()));
+    }
+
+    /**
+     * Adds entry to the worker queue, applying overflow policy if there's no space for it.
+     */
+    private void enqueue(Worker worker, LogEntry logEvent, Priority priority) {
+        PriorityBuffer<LogEntry> logEventsQueue = worker.queue;
+        logEvent.setPriority(priority);
+        if (worker.offer(logEvent, priority)) {
+            return;
+        }
+
+        // lower priority events give way before this one is spilled or the overflow policy applies to it,
+        // and go to the spill buffer themselves, if there is one
+        if (worker.offerLower(logEvent, priority, evicted -> {
+            if (!worker.spill(evicted)) {
+                onDropped(1, "No space available in internal queue, lower priority logging events are discarded",
+                        false);
+            }
+        }) || worker.spill(logEvent)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!worker.offer(logEvent, priority)) {
+                    LogEntry oldest = logEventsQueue.poll(priority);
+                    if (oldest == null) {
+                        // the rest of the arena is taken by higher priority events
+                        logEvent.release();
+                        onDropped(1, "No space available in internal queue, logging events are discarded", false);
+                        break;
+                    }
+                    oldest.release();
+                    onDropped(1, "No space available in internal queue, the oldest logging events are discarded",
+                            false);
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (!worker.offer(logEvent, priority, maxBlockTime)) {
+                        logEvent.release();
+                        onDropped(1, format("No space available in internal queue after %d ms waiting, logging events "
+                                + "are discarded", maxBlockTime), false);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    logEvent.release();
+                    onDropped(1, "Interrupted while waiting for space in internal queue, logging events are discarded",
+                            false);
+                }
+                break;
+            case FAIL_FAST:
+                logEvent.release();
+                metrics.onRejected();
+                onDropped(1, "No space available in internal queue, logging events are rejected", true);
+                break;
+            default:
+                logEvent.release();
+                onDropped(1, "No space available in internal queue, logging events are discarded", false);
+                break;
+        }
+    }
+
+    /**
+     * Counts discarded events by reason. They are reported every {@code DROP_WARNING_INTERVAL} and on stop, so that
+     * a full queue doesn't flood status messages with a warning per event.
+     */
+    private void onDropped(int count, String reason, boolean error) {
+        metrics.onDropped(count);
+        drops.computeIfAbsent(reason, key -> new DropCount(error)).count.addAndGet(count);
+    }
+
+    /**
+     * Reports number of events discarded for each reason since the previous report, if any.
+     */
+    private void reportDropped() {
+        drops.forEach((reason, drop) -> {
+            long unreported = drop.count.getAndSet(0);
+            if (unreported <= 0) {
+                return;
+            }
+
+            String message = format("%s: %d events were discarded since the previous report", reason, unreported);
+            if (drop.error) {
+                addError(message);
+            } else {
+                addWarn(message);
+            }
+        });
+    }
+
+    /**
+     * Appends message formatted by the caller, e.g. an embedded metric format event, to the appender's own log stream.
+     * Layout, duplicate suppression and routing rules don't apply to it; message is sent like an {@code INFO} event.
+     * @param timestamp event time, in ms since epoch
+     * @param message message, which must not exceed CloudWatch event size limit
+     */
+    public void appendMessage(long timestamp, String message) {
+        if (!isStarted()) {
+            return;
+        }
+
+        metrics.onAppended();
+        Worker[] shards = destination.shards;
+        enqueue(shards[Math.floorMod((int) Thread.currentThread().getId(), shards.length)],
+                LogEntry.formatted(timestamp, message), Priority.NORMAL);
+    }
+
+    /**
+     * Selects the shard worker of the event destination, so that events with the same shard key are sent in order.
+     */
+    private Worker selectWorker(ILoggingEvent event) {
+        Worker[] shards = route(event).shards;
+        if (shards.length == 1) {
+            return shards[0];
+        }
+
+        int hash;
+        if (shardKey == ShardKey.LOGGER) {
+            hash = event.getLoggerName().hashCode();
+            hash ^= hash >>> 16;
+        } else {
+            hash = (int) Thread.currentThread().getId();
+        }
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    /**
+     * Finds destination of the event: the one of the first matching routing rule or the appender's own one.
+     */
+    private Destination route(ILoggingEvent event) {
+        if (routes.length > 0) {
+            for (Route route : getRoutes(event.getLoggerName())) {
+                if (route.rule.matches(event)) {
+                    return route.destination;
+                }
+            }
+        }
+        return destination;
+    }
+
+    /**
+     * @return routes whose rules match the logger name, cached per logger
+     */
+    private Route[] getRoutes(String loggerName) {
+        Route[] candidates = routeCache.get(loggerName);
+        if (candidates == null) {
+            List<Route> matching = new ArrayList<>();
+            for (Route route : routes) {
+                if (route.rule.matchesLogger(loggerName)) {
+                    matching.add(route);
+                }
+            }
+            candidates = matching.toArray(NO_ROUTES);
+            // logger names are normally bounded, but dynamically named loggers mustn't grow the cache endlessly
+            if (routeCache.size() < MAX_ROUTE_CACHE_SIZE) {
+                routeCache.put(loggerName, candidates);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return approximate number of events waiting in internal queues
+     */
+    public int getQueuedCount() {
+        int count = 0;
+        Worker[] shards = workers;
+        if (shards != null) {
+            for (Worker worker : shards) {
+                count += worker.queue.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return approximate size of direct memory taken by queued events, in bytes; {@code 0} unless
+     * {@code queueBytes} is set
+     */
+    public long getQueuedBytes() {
+        long bytes = 0;
+        Worker[] shards = workers;
+        if (shards != null) {
+            for (Worker worker : shards) {
+                if (worker.arena != null) {
+                    bytes += worker.arena.getUsedBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return {@code true} if sending to any of the log streams is suspended after repeated failures
+     */
+    public boolean isSendingSuspended() {
+        Worker[] shards = workers;
+        if (shards != null) {
+            for (Worker worker : shards) {
+                if (worker.circuitBreaker.isOpen()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public AppenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        metrics.onAppended();
+        try {
+            DuplicateFilter filter = duplicateFilter;
+            TailSampler sampler = tailSampler;
+            if ((filter == null || filter.accept(event, this::appendSummary))
+                    && (sampler == null || !sampler.hold(event, this::appendSampled))) {
+                handle(event);
+            }
+        } catch (Exception ex) {
+            this.started = false;
+            addError(format("Failed to handle logging event for '%s'", getName()), ex);
+        }
+    }
+
+    /**
+     * Appends summary of suppressed repeated events.
+     */
+    private void appendSummary(ILoggingEvent summary) {
+        try {
+            handle(summary);
+        } catch (Exception ex) {
+            addError(format("Failed to handle summary of repeated logging events for '%s'", getName()), ex);
+        }
+    }
+
+    /**
+     * Appends event held for tail sampling, once its trace is sampled.
+     */
+    private void appendSampled(ILoggingEvent event) {
+        try {
+            handle(event);
+        } catch (Exception ex) {
+            addError(format("Failed to handle sampled logging event for '%s'", getName()), ex);
+        }
+    }
+
+    /**
+     * Log group and stream of routed events, spread across shard workers.
+     */
+    private static final class Destination {
+        private final String logGroup;
+        private final String logStream;
+        private Worker[] shards;
+
+        Destination(String logGroup, String logStream) {
+            this.logGroup = logGroup;
+            this.logStream = logStream;
+        }
+
+        String getKey() {
+            // colon is allowed neither in log group nor in log stream names
+            return logGroup + ':' + logStream;
+        }
+    }
+
+    /**
+     * Number of events discarded for a reason since the previous report.
+     */
+    private static final class DropCount {
+        private final AtomicLong count = new AtomicLong();
+        private final boolean error;
+
+        DropCount(boolean error) {
+            this.error = error;
+        }
+    }
+
+    /**
+     * Routing rule with its resolved destination.
+     */
+    private static final class Route {
+        private final RoutingRule rule;
+        private final Destination destination;
+
+        Route(RoutingRule rule, Destination destination) {
+            this.rule = rule;
+            this.destination = destination;
+        }
+    }
+
+    private static class Worker extends Thread {
+
+        private static final Layout<ILoggingEvent> FALLBACK_LAYOUT = new EchoLayout<>();
+
         private final AmazonCloudWatchAppender parent;
+        private final String logGroup;
+        private final String logStream;
+        private final SinkLimits limits;
+        private final PriorityBuffer<LogEntry> queue;
+        private final EventArena arena;
+        private final SpillBuffer spillBuffer;
+        private final LogEventBatch batch;
+        private final RingBuffer<List<InputLogEvent>> requestPool;
 
-        private String token = null;
-        private volatile boolean started = false;
+        private final RetryPolicy retryPolicy;
+        private final AdaptiveRateLimiter rateLimiter;
+        private final CircuitBreaker circuitBreaker;
+        private final BatchWindow batchWindow;
+        private final Object pauseLock = new Object();
+        private final Semaphore inFlight;
+        private final AtomicInteger inFlightEvents = new AtomicInteger();
+        private final Set<DelayedSubmit> delayedSubmits = ConcurrentHashMap.newKeySet();
 
-        Worker(AmazonCloudWatchAppender parent) {
+        private volatile boolean started = true;
+        private volatile long flushDeadline = Long.MAX_VALUE;
+        private LogSink.Channel channel;
+        private boolean flushNow;
+        private long lastFlushTime = System.currentTimeMillis();
+        private int provisionFailures;
+        private long lastProvisionError;
+
+        Worker(AmazonCloudWatchAppender parent, String logGroup, String logStream, SinkLimits limits,
+                PriorityBuffer<LogEntry> queue, EventArena arena, SpillBuffer spillBuffer) {
             this.parent = parent;
+            this.logGroup = logGroup;
+            this.logStream = logStream;
+            this.limits = limits;
+            this.queue = queue;
+            this.arena = arena;
+            this.spillBuffer = spillBuffer;
+
+            retryPolicy = new RetryPolicy(parent.maxRetries, RETRY_BASE_DELAY, RETRY_MAX_DELAY);
+            rateLimiter = new AdaptiveRateLimiter(parent.maxSendRate);
+            circuitBreaker = new CircuitBreaker(CIRCUIT_BREAKER_THRESHOLD, CIRCUIT_BREAKER_MIN_OPEN_TIME,
+                    CIRCUIT_BREAKER_MAX_OPEN_TIME);
+            inFlight = parent.maxInFlightRequests > 1 ? new Semaphore(parent.maxInFlightRequests) : null;
+            batchWindow = new BatchWindow(MIN_BATCH_TIME, parent.maxBatchTime, limits.getMaxBatchBytes());
+            batch = new LogEventBatch(limits);
+            requestPool = new RingBuffer<>(parent.maxInFlightRequests + 1);
         }
 
         @Override
         public void run() {
-            started = true;
+            List<LogEntry> entries = new ArrayList<>(FORMAT_CHUNK_SIZE);
+            // queue and spill buffer absorb events until the log stream is confirmed to exist
+            for (int attempts = 0; started && !provision(); attempts++) {
+                pause(retryPolicy.getDelay(attempts));
+            }
 
             while (started) {
-                List<InputLogEvent> events = new LinkedList<>();
+                long openTime = circuitBreaker.getRemainingOpenTime();
+                if (openTime > 0) {
+                    // sending is suspended, queue and spill buffer absorb events meanwhile
+                    pause(Math.min(openTime, DEFAULT_MAX_BATCH_TIME));
+                    continue;
+                }
+
+                replay();
                 try {
-                    Queues.drain(parent.logEventsQueue, events, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_TIME, TimeUnit.MILLISECONDS);
-                    handle(events);
+                    double requestRate = rateLimiter.getRate();
+                    long start = System.currentTimeMillis();
+                    long deadline = start + batchWindow.getLinger(requestRate);
+                    long maxDeadline = start + parent.maxBatchTime;
+                    int targetBytes = batchWindow.getTargetBytes(requestRate);
+                    while (!batch.isFull()) {
+                        // queued events are always taken, so a backlog is sent in full batches right away
+                        long remaining = getLingerTime(targetBytes, deadline, maxDeadline);
+                        LogEntry entry = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+                        if (entry == null) {
+                            if (remaining > 0) {
+                                continue;
+                            }
+                            break;
+                        }
+                        entries.add(entry);
+                        drain(entries);
+                        addAll(entries);
+                    }
+                    flush();
                 } catch (InterruptedException ex) {
-                    handle(events);
+                    addAll(entries);
+                    flush();
                 }
             }
 
-            List<InputLogEvent> remaining = new LinkedList<>();
-            parent.logEventsQueue.drainTo(remaining);
-            Lists.partition(remaining, DEFAULT_MAX_BATCH_SIZE).forEach(this::handle);
+            if (channel == null && !provision()) {
+                // queued events are spilled or discarded on close
+                return;
+            }
+            // queue yields higher priority events first and batches are sent as they fill up;
+            // events left after the deadline are spilled or discarded on close
+            while (System.currentTimeMillis() < flushDeadline && circuitBreaker.getRemainingOpenTime() == 0
+                    && drain(entries) > 0) {
+                addAll(entries);
+            }
+            flush();
+            awaitInFlight();
         }
 
-        void stopGracefully() {
+        /**
+         * Opens destination of the log stream in the sink, e.g. creates log group and log stream, unless they
+         * already exist. The first failure is reported, and then at most once per {@code PROVISION_ERROR_INTERVAL},
+         * so that a persistent one, e.g. missing permission, doesn't flood status messages at retry cadence.
+         * @return {@code true} if destination is open
+         */
+        private boolean provision() {
+            try {
+                channel = parent.sink.open(logGroup, logStream);
+            } catch (AmazonClientException | IOException ex) {
+                provisionFailures++;
+                long now = System.currentTimeMillis();
+                if (provisionFailures == 1 || now - lastProvisionError >= PROVISION_ERROR_INTERVAL) {
+                    lastProvisionError = now;
+                    parent.addError(format("Failed to open log stream '%s' in log group '%s' (%d attempts so far), "
+                            + "events are buffered until it's available", logStream, logGroup, provisionFailures), ex);
+                }
+                return false;
+            }
+
+            if (provisionFailures > 0) {
+                parent.addInfo(format("Opened log stream '%s' in log group '%s' after %d failed attempts", logStream,
+                        logGroup, provisionFailures));
+                provisionFailures = 0;
+            }
+            return true;
+        }
+
+        /**
+         * @return time (in ms) to wait for more events before sending the current batch
+         */
+        private long getLingerTime(int targetBytes, long deadline, long maxDeadline) {
+            if (flushNow || !started || batch.isEmpty() && deadline <= System.currentTimeMillis()) {
+                return 0;
+            }
+
+            long now = System.currentTimeMillis();
+            if (batch.getBytes() < targetBytes && now < deadline) {
+                return deadline - now;
+            }
+            // partial batch would wait for the sequence token of requests in flight, so it keeps growing meanwhile
+            if (inFlight != null && inFlight.availablePermits() < parent.maxInFlightRequests && now < maxDeadline) {
+                return Math.min(MIN_BATCH_TIME, maxDeadline - now);
+            }
+            return 0;
+        }
+
+        /**
+         * Waits for completion of asynchronous requests in flight, until the flush deadline.
+         */
+        private void awaitInFlight() {
+            if (inFlight == null) {
+                return;
+            }
+
+            // requests delayed past the deadline, e.g. retries scheduled before stopping, won't be sent anyway
+            abandonDelayedSubmits(flushDeadline);
+            try {
+                long timeout = Math.max(0, flushDeadline - System.currentTimeMillis());
+                if (!inFlight.tryAcquire(parent.maxInFlightRequests, timeout, TimeUnit.MILLISECONDS)) {
+                    parent.addWarn(format("Requests with %d events to '%s' are still in flight after flush deadline",
+                            inFlightEvents.get(), logStream));
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Stops taking new batches and lets the worker flush queued events until the deadline.
+         * @param deadline time (in ms since epoch) to stop sending at
+         */
+        void stopGracefully(long deadline) {
+            flushDeadline = deadline;
             started = false;
+            synchronized (pauseLock) {
+                pauseLock.notifyAll();
+            }
         }
 
-        private void handle(List<InputLogEvent> events) {
-            if (!events.isEmpty()) {
-                List<InputLogEvent> sorted = ORDERING.immutableSortedCopy(events);
-                PutLogEventsRequest request = new PutLogEventsRequest(parent.logGroup, parent.logStream, sorted);
+        /**
+         * Waits for the given time or until the worker is stopped.
+         */
+        private void pause(long millis) {
+            synchronized (pauseLock) {
+                if (started && millis > 0) {
+                    try {
+                        pauseLock.wait(millis);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moves events left in the queue to spill buffer, if any, and releases it.
+         * Higher priority events are spilled first, in case spill buffer runs out of space.
+         */
+        void close() {
+            if (inFlight != null) {
+                // scheduler is shut down, so requests still waiting for their delay would never be sent
+                abandonDelayedSubmits(Long.MIN_VALUE);
+            }
+
+            if (spillBuffer == null) {
+                int discarded = 0;
+                for (LogEntry entry; (entry = queue.poll()) != null; discarded++) {
+                    entry.release();
+                }
+                parent.metrics.onDropped(discarded);
+                return;
+            }
+
+            int discarded = 0;
+            LogEntry entry;
+            while ((entry = queue.poll()) != null) {
+                if (!spill(entry)) {
+                    discarded++;
+                }
+            }
+            if (discarded > 0) {
+                parent.metrics.onDropped(discarded);
+                parent.addWarn(format("Spill buffer is full, %d queued events were discarded", discarded));
+            }
+
+            try {
+                spillBuffer.close();
+            } catch (IOException ex) {
+                parent.addError(format("Failed to close spill buffer in %s", spillBuffer.getDirectory()), ex);
+            }
+        }
+
+        /**
+         * Inserts entry into the lane of its priority without waiting, moving its message into the arena, if any.
+         * @return {@code true} if entry was inserted; {@code false} if the lane or the arena is full
+         */
+        boolean offer(LogEntry entry, Priority priority) {
+            return (arena == null || entry.encode(arena, limits.getMaxEventBytes())) && queue.offer(entry, priority);
+        }
+
+        /**
+         * Inserts entry into the lane of its priority, waiting up to the specified time for space in the lane
+         * and in the arena.
+         * @return {@code true} if entry was inserted; {@code false} if there was no space for the whole wait time
+         * @throws InterruptedException if interrupted while waiting
+         */
+        boolean offer(LogEntry entry, Priority priority, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            return (arena == null || entry.encode(arena, limits.getMaxEventBytes(), timeout, TimeUnit.MILLISECONDS))
+                    && queue.offer(entry, priority, Math.max(0, deadline - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Inserts entry in place of lower priority entries, see {@link PriorityBuffer#offerLower}. With the arena,
+         * lower priority entries are evicted until the message fits into it as well. Evicted entries are released
+         * after the consumer returns, so it may still read or spill them.
+         * @return {@code true} if entry was inserted; {@code false} if there are no lower priority entries to evict
+         */
+        boolean offerLower(LogEntry entry, Priority priority, Consumer<LogEntry> evicted) {
+            if (arena != null) {
+                while (!entry.encode(arena, limits.getMaxEventBytes())) {
+                    LogEntry lower = queue.pollLower(priority);
+                    if (lower == null) {
+                        return false;
+                    }
+                    evicted.accept(lower);
+                    lower.release();
+                }
+                if (queue.offer(entry, priority)) {
+                    return true;
+                }
+            }
+            return queue.offerLower(entry, priority, lower -> {
+                evicted.accept(lower);
+                lower.release();
+            });
+        }
+
+        /**
+         * Writes entry to spill buffer.
+         * @return {@code true} if entry was written; {@code false} if spilling is disabled or spill buffer is full
+         */
+        boolean spill(LogEntry entry) {
+            if (spillBuffer == null) {
+                return false;
+            }
+
+            entry.format(parent.layout);
+            if (isSplit(entry)) {
+                boolean written = true;
+                for (LogEntry part : entry.split(limits.getMaxEventBytes())) {
+                    written &= spill(part);
+                }
+                return written;
+            }
+            entry.truncate(limits.getMaxEventBytes());
+            try {
+                if (spillBuffer.write(entry.getTimestamp(), entry.getMessage())) {
+                    parent.metrics.onSpilled(1);
+                    return true;
+                }
+                return false;
+            } catch (IOException ex) {
+                parent.addError(format("Failed to write event to spill buffer in %s", spillBuffer.getDirectory()), ex);
+                return false;
+            }
+        }
+
+        /**
+         * Sends up to one full batch of spilled events. Events stay in spill buffer if sending fails.
+         * Replayed batches are sent synchronously, so asynchronous requests in flight complete first; otherwise they
+         * would race for the sequence token of the log stream.
+         */
+        private void replay() {
+            if (spillBuffer == null || spillBuffer.isEmpty()) {
+                return;
+            }
+
+            if (inFlight != null) {
+                try {
+                    inFlight.acquire(parent.maxInFlightRequests);
+                } catch (InterruptedException ex) {
+                    // events stay in spill buffer until the next attempt or until it's reopened
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            try {
+                List<LogEntry> entries = spillBuffer.read(limits.getMaxBatchCount(), limits.getMaxBatchBytes());
+                boolean sent = true;
+                for (LogEntry entry : entries) {
+                    entry.format(parent.layout);
+                    if (!batch.add(entry.getTimestamp(), entry.getMessage(), entry.getMessageBytes())) {
+                        sent &= sendBatch();
+                        batch.add(entry.getTimestamp(), entry.getMessage(), entry.getMessageBytes());
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    sent &= sendBatch();
+                }
+
+                if (sent) {
+                    spillBuffer.commit();
+                } else {
+                    spillBuffer.rollback();
+                }
+            } catch (IOException ex) {
+                parent.addError(format("Failed to replay events from spill buffer in %s", spillBuffer.getDirectory()), ex);
+            } finally {
+                if (inFlight != null) {
+                    inFlight.release(parent.maxInFlightRequests);
+                }
+            }
+        }
+
+        /**
+         * Moves already available entries from the queue to the list, up to {@code FORMAT_CHUNK_SIZE} entries.
+         * Higher priority entries are taken first; the batch orders events by timestamp anyway.
+         * @return number of entries in the list
+         */
+        private int drain(List<LogEntry> entries) {
+            LogEntry entry;
+            while (entries.size() < FORMAT_CHUNK_SIZE && (entry = queue.poll()) != null) {
+                entries.add(entry);
+            }
+            return entries.size();
+        }
+
+        /**
+         * Formats entries and adds them to the current batch, sending the batch each time it fills up.
+         */
+        private void addAll(List<LogEntry> entries) {
+            layout(entries);
+            for (LogEntry entry : entries) {
+                add(entry);
+            }
+            entries.clear();
+        }
+
+        /**
+         * Formats entries on formatter threads, if available; the worker formats its own share of entries meanwhile.
+         */
+        private void layout(List<LogEntry> entries) {
+            ExecutorService pool = parent.formatterPool;
+            if (pool == null || entries.size() < 2) {
+                layout(entries, 0, entries.size());
+                return;
+            }
+
+            int slices = Math.min(parent.formatterThreads + 1, entries.size());
+            int sliceSize = (entries.size() + slices - 1) / slices;
+            int unsubmitted = entries.size();
+            List<Future<?>> futures = new ArrayList<>(slices - 1);
+            for (int from = sliceSize; from < entries.size(); from += sliceSize) {
+                int start = from;
+                int end = Math.min(from + sliceSize, entries.size());
                 try {
+                    futures.add(pool.submit(() -> layout(entries, start, end)));
+                } catch (RejectedExecutionException ex) {
+                    // pool is shut down on appender stop, so the worker formats the rest itself
+                    unsubmitted = start;
+                    break;
+                }
+            }
+
+            layout(entries, 0, Math.min(sliceSize, entries.size()));
+            layout(entries, unsubmitted, entries.size());
+            // entries are still written by formatter threads until their slices complete, so interrupt (e.g. on stop)
+            // doesn't cut waiting short and is restored once all entries are formatted
+            boolean interrupted = false;
+            for (Future<?> future : futures) {
+                while (true) {
                     try {
-                        putEvents(request);
-                    } catch (DataAlreadyAcceptedException | InvalidSequenceTokenException ex) {
-                        putEvents(request);
+                        future.get();
+                        break;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    } catch (ExecutionException ex) {
+                        parent.addError("Failed to format logging events", ex.getCause());
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void layout(List<LogEntry> entries, int from, int to) {
+            for (int i = from; i < to; i++) {
+                LogEntry entry = entries.get(i);
+                try {
+                    entry.format(parent.layout);
+                } catch (RuntimeException ex) {
+                    parent.addError("Failed to format logging event, falling back to echo layout", ex);
+                    entry.format(FALLBACK_LAYOUT);
+                }
+            }
+        }
+
+        /**
+         * Adds entry to the current batch, sending the batch first if entry doesn't fit into it.
+         */
+        private void add(LogEntry entry) {
+            if (isSplit(entry)) {
+                List<LogEntry> parts = entry.split(limits.getMaxEventBytes());
+                parent.addWarn(format("Logging event exceeds %d bytes and was split into %d parts",
+                        limits.getMaxEventBytes(), parts.size()));
+                for (LogEntry part : parts) {
+                    add(part);
+                }
+                flushNow |= entry.isFlushNow();
+                return;
+            }
+
+            if (entry.truncate(limits.getMaxEventBytes())) {
+                parent.addWarn(format("Logging event exceeds %d bytes and was truncated", limits.getMaxEventBytes()));
+            }
+
+            if (!batch.add(entry.getTimestamp(), entry.getMessage(), entry.getMessageBytes())) {
+                flush();
+                batch.add(entry.getTimestamp(), entry.getMessage(), entry.getMessageBytes());
+            }
+            flushNow |= entry.isFlushNow();
+        }
+
+        /**
+         * @return {@code true} if formatted entry exceeds event size limit and should be split
+         */
+        private boolean isSplit(LogEntry entry) {
+            return entry.getMessageBytes() > limits.getMaxEventBytes()
+                    && parent.oversizePolicy == OversizePolicy.SPLIT;
+        }
+
+        private void flush() {
+            flushNow = false;
+            if (!batch.isEmpty()) {
+                long now = System.currentTimeMillis();
+                batchWindow.onBatch(batch.getBytes(), now - lastFlushTime);
+                lastFlushTime = now;
+
+                parent.metrics.onBatch(batch.size(), batch.getBytes());
+                handle(drainBatch());
+            }
+        }
+
+        /**
+         * Sends events of the current batch synchronously, without spilling them if sending fails.
+         * @return {@code true} if events were sent
+         */
+        private boolean sendBatch() {
+            List<InputLogEvent> events = drainBatch();
+            boolean sent = send(events);
+            releaseEvents(events);
+            return sent;
+        }
+
+        /**
+         * Moves events of the current batch to a pooled list.
+         */
+        private List<InputLogEvent> drainBatch() {
+            List<InputLogEvent> events = requestPool.poll();
+            if (events == null) {
+                events = new ArrayList<>();
+            }
+            batch.drainTo(events);
+            return events;
+        }
+
+        /**
+         * Returns events to the pool once they are sent. Events are kept for reuse, but not their messages.
+         */
+        private void releaseEvents(List<InputLogEvent> events) {
+            for (InputLogEvent event : events) {
+                event.setMessage(null);
+            }
+            requestPool.offer(events);
+        }
+
+        /**
+         * Sends events, spilling them to disk if sending fails or flush deadline has passed.
+         */
+        private void handle(List<InputLogEvent> events) {
+            if (!started && System.currentTimeMillis() >= flushDeadline) {
+                // flush deadline has passed, so events are handed over to spill buffer instead
+                spill(events);
+                releaseEvents(events);
+            } else if (inFlight != null && channel instanceof LogSink.AsyncChannel) {
+                sendAsync(events);
+            } else {
+                if (!send(events)) {
+                    spill(events);
+                }
+                releaseEvents(events);
+            }
+        }
+
+        /**
+         * Writes events which failed to be sent to spill buffer, if any.
+         */
+        private void spill(List<InputLogEvent> events) {
+            if (spillBuffer == null) {
+                // failure is already reported
+                parent.metrics.onDropped(events.size());
+                return;
+            }
+
+            int discarded = 0;
+            for (InputLogEvent event : events) {
+                try {
+                    if (!spillBuffer.write(event.getTimestamp(), event.getMessage())) {
+                        discarded++;
+                    }
+                } catch (IOException ex) {
+                    discarded++;
+                }
+            }
+            parent.metrics.onSpilled(events.size() - discarded);
+            if (discarded > 0) {
+                parent.onDropped(discarded, "Spill buffer is full", false);
+            }
+        }
+
+        /**
+         * Sends events in a single request, retrying it with backoff while failures are transient.
+         * @return {@code true} if events were sent
+         */
+        private boolean send(List<InputLogEvent> events) {
+            if (!circuitBreaker.tryAcquire()) {
+                parent.addWarn(format("Sending is suspended after repeated failures, %d events were not sent",
+                        events.size()));
+                return false;
+            }
+
+            for (int retries = 0; ; retries++) {
+                long start = 0;
+                try {
+                    rateLimiter.acquire();
+                    start = System.nanoTime();
+                    channel.send(events);
+                    onRequest(System.nanoTime() - start);
+
+                    rateLimiter.onSuccess();
+                    retryPolicy.onSuccess();
+                    circuitBreaker.onSuccess();
+                    parent.metrics.onSent(events.size());
+                    return true;
+                } catch (AmazonClientException ex) {
+                    onRequest(System.nanoTime() - start);
+                    long delay = retryPolicy.getDelay(retries);
+                    if (!shouldRetry(ex, retries, delay)) {
+                        parent.metrics.onFailedRequest();
+                        parent.addError(format("Failed to handle %d events after %d retries", events.size(), retries), ex);
+                        return false;
                     }
+                    parent.metrics.onRetry();
+                    backoff(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    parent.addError(format("Interrupted while sending %d events", events.size()), ex);
+                    return false;
                 } catch (Exception ex) {
                     parent.addError(format("Failed to handle %d events", events.size()), ex);
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Sends events in a single asynchronous request, waiting while maximum number of requests is in flight.
+         * Failed request is retried with backoff from its completion callback.
+         */
+        private void sendAsync(List<InputLogEvent> events) {
+            if (!circuitBreaker.tryAcquire()) {
+                parent.addWarn(format("Sending is suspended after repeated failures, %d events were not sent",
+                        events.size()));
+                spill(events);
+                releaseEvents(events);
+                return;
+            }
+
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                parent.addError(format("Interrupted while sending %d events", events.size()), ex);
+                spill(events);
+                releaseEvents(events);
+                return;
+            }
+
+            inFlightEvents.addAndGet(events.size());
+            long delay = TimeUnit.NANOSECONDS.toMillis(rateLimiter.reserve());
+            submit(events, 0, delay);
+        }
+
+        /**
+         * Submits asynchronous request after the given delay. In-flight permit is held until request completes.
+         */
+        private void submit(List<InputLogEvent> events, int retries, long delay) {
+            try {
+                if (delay > 0) {
+                    ScheduledExecutorService scheduler = parent.scheduler;
+                    if (scheduler == null) {
+                        throw new RejectedExecutionException("Appender is stopped");
+                    }
+                    DelayedSubmit delayed = new DelayedSubmit(events, retries, System.currentTimeMillis() + delay);
+                    delayedSubmits.add(delayed);
+                    try {
+                        scheduler.schedule(delayed, delay, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException ex) {
+                        if (delayed.claim()) {
+                            throw ex;
+                        }
+                    }
+                    return;
                 }
+
+                long start = System.nanoTime();
+                ((LogSink.AsyncChannel) channel).sendAsync(events, new LogSink.Callback() {
+                    @Override
+                    public void onSuccess() {
+                        onRequest(System.nanoTime() - start);
+                        onAsyncSuccess(events);
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        onRequest(System.nanoTime() - start);
+                        onAsyncError(events, retries, exception);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // sink or scheduler is already shut down
+                onAsyncError(events, retries, ex);
             }
         }
 
-        private void putEvents(PutLogEventsRequest request) {
+        private void onAsyncSuccess(List<InputLogEvent> events) {
+            parent.metrics.onSent(events.size());
+            rateLimiter.onSuccess();
+            retryPolicy.onSuccess();
+            circuitBreaker.onSuccess();
+            inFlightEvents.addAndGet(-events.size());
+            releaseEvents(events);
+            inFlight.release();
+        }
+
+        private void onAsyncError(List<InputLogEvent> events, int retries, Exception exception) {
+            long delay = retryPolicy.getDelay(retries);
+            if (exception instanceof AmazonClientException
+                    && shouldRetry((AmazonClientException) exception, retries, delay)) {
+                parent.metrics.onRetry();
+                submit(events, retries + 1, delay + TimeUnit.NANOSECONDS.toMillis(rateLimiter.reserve()));
+                return;
+            }
+
+            parent.metrics.onFailedRequest();
+            parent.addError(format("Failed to handle %d events after %d retries", events.size(), retries), exception);
+            abandon(events);
+        }
+
+        /**
+         * Hands events of an asynchronous request over to spill buffer and releases its in-flight permit.
+         */
+        private void abandon(List<InputLogEvent> events) {
+            spill(events);
+            inFlightEvents.addAndGet(-events.size());
+            releaseEvents(events);
+            inFlight.release();
+        }
+
+        /**
+         * Spills events of requests waiting for their delay to end at or after the given time, instead of sending them.
+         * @param time time (in ms since epoch), or {@code Long.MIN_VALUE} to spill all of them
+         */
+        private void abandonDelayedSubmits(long time) {
+            for (DelayedSubmit delayed : delayedSubmits) {
+                if (delayed.dueTime >= time && delayed.claim()) {
+                    abandon(delayed.events);
+                }
+            }
+        }
+
+        private void onRequest(long nanos) {
+            parent.metrics.onRequest(nanos);
+            batchWindow.onRequest(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+
+        /**
+         * Updates send rate and circuit state after failed request and checks whether it should be retried.
+         * While flushing on stop, request is only retried if the retry delay ends before the flush deadline.
+         */
+        private boolean shouldRetry(AmazonClientException ex, int retries, long delay) {
+            if (RetryPolicy.isThrottling(ex)) {
+                parent.metrics.onThrottle();
+                rateLimiter.onThrottle();
+            }
+            if (RetryPolicy.isRetryable(ex)) {
+                circuitBreaker.onFailure();
+            }
+            return (started || System.currentTimeMillis() + delay < flushDeadline)
+                    && circuitBreaker.getRemainingOpenTime() == 0 && retryPolicy.shouldRetry(ex, retries);
+        }
+
+        /**
+         * Waits before retrying a request. Wait is cut short when the worker is stopped, unless it's already flushing.
+         */
+        private void backoff(long millis) {
+            if (started) {
+                pause(millis);
+                return;
+            }
             try {
-                PutLogEventsResult result = parent.awsLogsClient.putLogEvents(request.withSequenceToken(token));
-                token = result.getNextSequenceToken();
-            } catch (DataAlreadyAcceptedException ex) {
-                token = ex.getExpectedSequenceToken();
-                throw ex;
-            } catch (InvalidSequenceTokenException ex) {
-                token = ex.getExpectedSequenceToken();
-                throw ex;
+                TimeUnit.MILLISECONDS.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Asynchronous request waiting on the scheduler for its delay to end. It's either sent by the scheduler
+         * or abandoned on stop, whichever claims it first.
+         */
+        private final class DelayedSubmit implements Runnable {
+            private final List<InputLogEvent> events;
+            private final int retries;
+            private final long dueTime;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+
+            DelayedSubmit(List<InputLogEvent> events, int retries, long dueTime) {
+                this.events = events;
+                this.retries = retries;
+                this.dueTime = dueTime;
+            }
+
+            @Override
+            public void run() {
+                if (claim()) {
+                    submit(events, retries, 0);
+                }
+            }
+
+            boolean claim() {
+                if (claimed.compareAndSet(false, true)) {
+                    delayedSubmits.remove(this);
+                    return true;
+                }
+                return false;
             }
         }
     }
@@ -0,0 +1,211 @@
+package com.intapp.platform.logging.logback.appender;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of CloudWatch appender.
+ * <p>
+ * Counters are striped ({@link LongAdder}), so updating them from many logging threads doesn't contend on a single
+ * memory location. Values are cumulative since appender creation and read without synchronization, so they are only
+ * approximately consistent with each other. Maximums are the exception: they cover the last {@code MAX_WINDOW} ms,
+ * so that a peak stops being reported after a while.
+ */
+public final class AppenderMetrics {
+    /**
+     * Time (in ms) maximums are reported for, which is moved every third of it.
+     */
+    public static final long MAX_WINDOW = TimeUnit.MINUTES.toMillis(2);
+    private static final int MAX_WINDOW_INTERVALS = 3;
+
+    private final LongAdder appendedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder rejectedEvents = new LongAdder();
+    private final LongAdder spilledEvents = new LongAdder();
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder unsampledEvents = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchEvents = new LongAdder();
+    private final LongAdder batchBytes = new LongAdder();
+    private final WindowedMax maxBatchBytes = newMax();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestTime = new LongAdder();
+    private final WindowedMax maxRequestTime = newMax();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder throttles = new LongAdder();
+
+    AppenderMetrics() {
+    }
+
+    private static WindowedMax newMax() {
+        return new WindowedMax(MAX_WINDOW, MAX_WINDOW_INTERVALS, System.currentTimeMillis());
+    }
+
+    void onAppended() {
+        appendedEvents.increment();
+    }
+
+    void onDropped(int count) {
+        droppedEvents.add(count);
+    }
+
+    void onRejected() {
+        rejectedEvents.increment();
+    }
+
+    void onSpilled(int count) {
+        spilledEvents.add(count);
+    }
+
+    void onUnsampled(int count) {
+        unsampledEvents.add(count);
+    }
+
+    void onBatch(int events, int bytes) {
+        batches.increment();
+        batchEvents.add(events);
+        batchBytes.add(bytes);
+        maxBatchBytes.record(bytes, System.currentTimeMillis());
+    }
+
+    /**
+     * Records completed {@code PutLogEvents} request attempt.
+     * @param time duration of the request, in ns
+     */
+    void onRequest(long time) {
+        requests.increment();
+        requestTime.add(time);
+        maxRequestTime.record(time, System.currentTimeMillis());
+    }
+
+    void onSent(int events) {
+        sentEvents.add(events);
+    }
+
+    void onFailedRequest() {
+        failedRequests.increment();
+    }
+
+    void onRetry() {
+        retries.increment();
+    }
+
+    void onThrottle() {
+        throttles.increment();
+    }
+
+    /**
+     * @return number of events accepted by the appender
+     */
+    public long getAppendedEvents() {
+        return appendedEvents.sum();
+    }
+
+    /**
+     * @return number of events discarded because of full buffers or failed requests
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * @return number of events rejected by {@link OverflowPolicy#FAIL_FAST} policy, which are also counted as dropped
+     */
+    public long getRejectedEvents() {
+        return rejectedEvents.sum();
+    }
+
+    /**
+     * @return number of events written to disk spill buffer
+     */
+    public long getSpilledEvents() {
+        return spilledEvents.sum();
+    }
+
+    /**
+     * @return number of events accepted by CloudWatch
+     */
+    public long getSentEvents() {
+        return sentEvents.sum();
+    }
+
+    /**
+     * @return number of events held for tail sampling and discarded because their trace wasn't sampled
+     */
+    public long getUnsampledEvents() {
+        return unsampledEvents.sum();
+    }
+
+    /**
+     * @return number of assembled batches
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return total number of events in assembled batches
+     */
+    public long getBatchEvents() {
+        return batchEvents.sum();
+    }
+
+    /**
+     * @return total size of assembled batches, calculated as in {@code PutLogEvents} request, in bytes
+     */
+    public long getBatchBytes() {
+        return batchBytes.sum();
+    }
+
+    /**
+     * @return size of the largest batch assembled within {@code MAX_WINDOW}, in bytes
+     */
+    public long getMaxBatchBytes() {
+        return maxBatchBytes.get(System.currentTimeMillis());
+    }
+
+    /**
+     * @return number of completed {@code PutLogEvents} request attempts, successful or not
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return total duration of {@code PutLogEvents} request attempts, in ns
+     */
+    public long getRequestTime() {
+        return requestTime.sum();
+    }
+
+    /**
+     * @return duration of the longest {@code PutLogEvents} request attempt within {@code MAX_WINDOW}, in ns
+     */
+    public long getMaxRequestTime() {
+        return maxRequestTime.get(System.currentTimeMillis());
+    }
+
+    /**
+     * @return number of requests which failed after all retries
+     */
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    /**
+     * @return number of request retries
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return number of requests throttled by CloudWatch
+     */
+    public long getThrottles() {
+        return throttles.sum();
+    }
+}
@@ -0,0 +1,87 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+
+/**
+ * Adapts how long the worker waits for more events before sending a partial batch, and how large a batch is worth
+ * waiting for, to the observed traffic and service feedback.
+ * <p>
+ * Requests are spaced by the interval which keeps them within a share of the allowed request rate (lowered by
+ * the rate limiter while the service throttles) and isn't shorter than request latency, as requests sent more often
+ * would wait for the sequence token of the stream; concurrent requests are left for sending a backlog. A partial batch
+ * waits at most for that interval, so events of a quiet stream are sent quickly, while a busy stream sends batches
+ * with the bytes arriving during the interval, so that request rate stays within the limits.
+ */
+class BatchWindow {
+    private static final double SMOOTHING = 0.2;
+    private static final double RATE_HEADROOM = 0.5;
+    private static final int MIN_TARGET_BYTES = 16 * 1024;
+
+    private final long minLinger;
+    private final long maxLinger;
+    private final int maxBytes;
+
+    private double byteRate;
+    private double latency;
+
+    /**
+     * @param minLinger minimum time (in ms) to wait for more events
+     * @param maxLinger maximum time (in ms) to wait for more events
+     */
+    BatchWindow(long minLinger, long maxLinger) {
+        this(minLinger, maxLinger, CloudWatchLogsSink.MAX_BATCH_BYTES);
+    }
+
+    /**
+     * @param minLinger minimum time (in ms) to wait for more events
+     * @param maxLinger maximum time (in ms) to wait for more events
+     * @param maxBytes maximum size of a batch, in bytes
+     */
+    BatchWindow(long minLinger, long maxLinger, int maxBytes) {
+        this.minLinger = minLinger;
+        this.maxLinger = Math.max(minLinger, maxLinger);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Updates arrival rate with a sent batch.
+     * @param bytes size of the batch
+     * @param elapsed time (in ms) since the previous batch was sent
+     */
+    synchronized void onBatch(int bytes, long elapsed) {
+        byteRate = smooth(byteRate, (double) bytes / Math.max(1, elapsed));
+    }
+
+    /**
+     * Updates request latency with a completed request.
+     * @param elapsed request time, in ms
+     */
+    synchronized void onRequest(long elapsed) {
+        latency = smooth(latency, elapsed);
+    }
+
+    /**
+     * @param requestRate current request rate limit, per second
+     * @return maximum time (in ms) to wait for more events before sending a partial batch
+     */
+    synchronized long getLinger(double requestRate) {
+        return Math.max(minLinger, Math.min(maxLinger, Math.round(getInterval(requestRate))));
+    }
+
+    /**
+     * @param requestRate current request rate limit, per second
+     * @return size of batch (in bytes) which is sent without waiting for more events
+     */
+    synchronized int getTargetBytes(double requestRate) {
+        double bytes = byteRate * Math.min(getInterval(requestRate), maxLinger);
+        return (int) Math.max(MIN_TARGET_BYTES, Math.min(maxBytes, bytes));
+    }
+
+    private double getInterval(double requestRate) {
+        return Math.max(1000 / (requestRate * RATE_HEADROOM), latency);
+    }
+
+    private static double smooth(double average, double value) {
+        return average == 0 ? value : average + SMOOTHING * (value - average);
+    }
+}
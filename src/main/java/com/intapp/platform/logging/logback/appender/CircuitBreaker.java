@@ -0,0 +1,79 @@
+package com.intapp.platform.logging.logback.appender;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending to CloudWatch after a number of consecutive failures, letting buffers absorb events meanwhile.
+ * <p>
+ * After the open period a single probe request is allowed: claiming it holds other requests off for another open
+ * period. Probe success closes the circuit, while failure opens it again for twice as long, up to the maximum open
+ * time; probe which never completes is replaced by the next one after the open period.
+ */
+class CircuitBreaker {
+    private final int failureThreshold;
+    private final long minOpenTime;
+    private final long maxOpenTime;
+
+    private int failures;
+    private long openTime;
+    private long openUntil;
+
+    /**
+     * @param failureThreshold number of consecutive failures which opens the circuit
+     * @param minOpenTime time the circuit stays open after the first opening, in ms
+     * @param maxOpenTime maximum time the circuit stays open, in ms
+     */
+    CircuitBreaker(int failureThreshold, long minOpenTime, long maxOpenTime) {
+        this.failureThreshold = failureThreshold;
+        this.minOpenTime = TimeUnit.MILLISECONDS.toNanos(minOpenTime);
+        this.maxOpenTime = TimeUnit.MILLISECONDS.toNanos(maxOpenTime);
+    }
+
+    /**
+     * @return time until requests are allowed again, in ms; {@code 0} if requests are allowed now
+     */
+    synchronized long getRemainingOpenTime() {
+        if (openTime == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, openUntil - System.nanoTime()));
+    }
+
+    /**
+     * Claims permission to send a request, which is the probe if the circuit is open.
+     * @return {@code true} if the circuit is closed, or the open period has passed and the probe was claimed
+     */
+    synchronized boolean tryAcquire() {
+        if (openTime == 0) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        if (now < openUntil) {
+            return false;
+        }
+        openUntil = now + openTime;
+        return true;
+    }
+
+    synchronized boolean isOpen() {
+        return openTime > 0;
+    }
+
+    synchronized void onSuccess() {
+        failures = 0;
+        openTime = 0;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+        if (openTime > 0) {
+            // probe request after open period failed
+            openTime = Math.min(openTime * 2, maxOpenTime);
+            openUntil = System.nanoTime() + openTime;
+        } else if (failures >= failureThreshold) {
+            openTime = minOpenTime;
+            openUntil = System.nanoTime() + openTime;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * Suppresses bursts of repeated logging events.
+ * <p>
+ * Events are fingerprinted by logger, level, message template and throwable class with its stack frames.
+ * The first occurrence of a fingerprint within the time window is logged, further occurrences are only counted
+ * and reported with a single "repeated N times" summary event when the window ends.
+ * <p>
+ * Recent occurrences are kept in a fixed-size table indexed by fingerprint hash, updated with CAS only, so the check
+ * takes no locks and memory stays bounded. Collisions evict the previous occurrence, reporting its summary earlier.
+ */
+final class DuplicateFilter {
+    private static final StackTraceElement[] EMPTY_CALLER_DATA = new StackTraceElement[0];
+
+    private final long window;
+    private final int mask;
+    private final AtomicReferenceArray<Occurrence> occurrences;
+
+    /**
+     * @param window time window of suppression, in ms
+     * @param capacity number of tracked fingerprints, rounded up to the power of two
+     */
+    DuplicateFilter(long window, int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.window = window;
+        this.mask = size - 1;
+        this.occurrences = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Checks whether event should be logged.
+     * @param event logging event
+     * @param summaries receiver of summary events for evicted occurrences
+     * @return {@code true} if event should be logged; {@code false} if it repeats a recent event and was counted
+     */
+    boolean accept(ILoggingEvent event, Consumer<ILoggingEvent> summaries) {
+        long fingerprint = fingerprint(event);
+        int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        long timestamp = event.getTimeStamp();
+
+        Occurrence occurrence = occurrences.get(index);
+        if (occurrence != null && occurrence.fingerprint == fingerprint && timestamp - occurrence.start < window) {
+            occurrence.repeats.incrementAndGet();
+            return false;
+        }
+
+        // first occurrence is kept for the summary, so it must not depend on logging thread state any more
+        event.prepareForDeferredProcessing();
+        if (occurrences.compareAndSet(index, occurrence, new Occurrence(fingerprint, timestamp, event))
+                && occurrence != null) {
+            summarize(occurrence, timestamp, summaries);
+        }
+        return true;
+    }
+
+    /**
+     * Reports summaries of occurrences whose window has ended and forgets them.
+     * @param now current time, in ms
+     * @param summaries receiver of summary events
+     */
+    void sweep(long now, Consumer<ILoggingEvent> summaries) {
+        sweep(now, false, summaries);
+    }
+
+    /**
+     * Reports summaries of all occurrences regardless of their window, e.g. on appender stop.
+     * @param now current time, in ms
+     * @param summaries receiver of summary events
+     */
+    void flush(long now, Consumer<ILoggingEvent> summaries) {
+        sweep(now, true, summaries);
+    }
+
+    private void sweep(long now, boolean all, Consumer<ILoggingEvent> summaries) {
+        for (int i = 0; i <= mask; i++) {
+            Occurrence occurrence = occurrences.get(i);
+            if (occurrence != null && (all || now - occurrence.start >= window)
+                    && occurrences.compareAndSet(i, occurrence, null)) {
+                summarize(occurrence, now, summaries);
+            }
+        }
+    }
+
+    private void summarize(Occurrence occurrence, long now, Consumer<ILoggingEvent> summaries) {
+        int repeats = occurrence.repeats.get();
+        if (repeats == 0) {
+            return;
+        }
+
+        ILoggingEvent first = occurrence.event;
+        LoggingEvent summary = new LoggingEvent();
+        summary.setTimeStamp(now);
+        summary.setLevel(first.getLevel());
+        summary.setLoggerName(first.getLoggerName());
+        summary.setLoggerContextRemoteView(first.getLoggerContextVO());
+        summary.setThreadName(first.getThreadName());
+        summary.setMDCPropertyMap(first.getMDCPropertyMap());
+        summary.setCallerData(EMPTY_CALLER_DATA);
+        summary.setMessage(format("Previous message repeated %d times in %d ms: %s", repeats, now - occurrence.start,
+                first.getFormattedMessage()));
+
+        summaries.accept(summary);
+    }
+
+    /**
+     * Calculates event fingerprint from logger, level, message template and throwable.
+     */
+    static long fingerprint(ILoggingEvent event) {
+        long hash = event.getLoggerName().hashCode();
+        hash = hash * 31 + event.getLevel().levelInt;
+        hash = hash * 31 + (event.getMessage() == null ? 0 : event.getMessage().hashCode());
+
+        for (IThrowableProxy proxy = event.getThrowableProxy(); proxy != null; proxy = proxy.getCause()) {
+            hash = hash * 31 + proxy.getClassName().hashCode();
+            StackTraceElementProxy[] frames = proxy.getStackTraceElementProxyArray();
+            if (frames != null) {
+                for (StackTraceElementProxy frame : frames) {
+                    hash = hash * 31 + frame.getStackTraceElement().hashCode();
+                }
+            }
+        }
+
+        // spread bits, so that similar fingerprints don't collide in the table
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * The first occurrence of a fingerprint within the current window.
+     */
+    private static final class Occurrence {
+        private final long fingerprint;
+        private final long start;
+        private final ILoggingEvent event;
+        private final AtomicInteger repeats = new AtomicInteger();
+
+        private Occurrence(long fingerprint, long start, ILoggingEvent event) {
+            this.fingerprint = fingerprint;
+            this.start = start;
+            this.event = event;
+        }
+    }
+}
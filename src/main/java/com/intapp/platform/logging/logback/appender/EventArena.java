@@ -0,0 +1,205 @@
+package com.intapp.platform.logging.logback.appender;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct memory holding encoded messages of queued events, bounded by a byte budget.
+ * <p>
+ * Memory is divided into fixed-size pages, and a message takes as many pages as it needs, not necessarily adjacent,
+ * so freed pages are reused by messages of any size without fragmentation. Pages are small, so that a short message
+ * doesn't take much more of the budget than its size. Direct memory is allocated in chunks as the arena fills up
+ * and is kept for reuse afterwards, so the arena never takes more memory than its budget.
+ * <p>
+ * Arena reduces what the heap retains, not allocation: queued messages don't stay on the heap, so a backlog isn't
+ * promoted to the old generation, but each message is still encoded into a temporary array on the way in and decoded
+ * into a new string on the way out, which are short-lived garbage, as is the list of its pages.
+ * <p>
+ * Allocation and release don't lock the arena: a message reserves its pages from the budget with a CAS and takes them
+ * from a lock-free {@link RingBuffer} of free pages. The lock is taken only to allocate the next chunk and to wait for
+ * released pages. Copying doesn't need it either: pages belong to a single message at a time.
+ */
+final class EventArena {
+    static final int PAGE_SIZE = 64;
+    private static final int CHUNK_PAGES = 16384;
+
+    private final int maxPages;
+    private final ByteBuffer[] chunks;
+    private final RingBuffer<Integer> freePages;
+
+    /**
+     * Page numbers boxed once, so that returning a page to the free ones doesn't allocate.
+     */
+    private final Integer[] pageNumbers;
+
+    /**
+     * Number of pages not taken by messages, including ones not allocated yet.
+     */
+    private final AtomicInteger availablePages;
+    private final AtomicInteger waiters = new AtomicInteger();
+    private volatile int allocatedPages;
+
+    /**
+     * @param budget maximum size of direct memory, in bytes, rounded down to pages (but not less than one page)
+     */
+    EventArena(int budget) {
+        maxPages = Math.max(1, budget / PAGE_SIZE);
+        chunks = new ByteBuffer[(maxPages + CHUNK_PAGES - 1) / CHUNK_PAGES];
+        freePages = new RingBuffer<>(maxPages);
+        pageNumbers = new Integer[maxPages];
+        availablePages = new AtomicInteger(maxPages);
+    }
+
+    /**
+     * Allocates pages for a message without waiting.
+     * @param bytes size of the message, in bytes
+     * @return pages of the message or {@code null} if the arena has no space for it
+     */
+    int[] allocate(int bytes) {
+        int count = getPageCount(bytes);
+        int available;
+        do {
+            available = availablePages.get();
+            if (count > available) {
+                return null;
+            }
+        } while (!availablePages.compareAndSet(available, available - count));
+
+        // reserved pages are either free, allocated later, or being returned by another thread
+        int[] pages = new int[count];
+        for (int i = 0; i < count; i++) {
+            Integer page;
+            while ((page = freePages.poll()) == null) {
+                if (allocatedPages < maxPages) {
+                    grow();
+                } else {
+                    Thread.yield();
+                }
+            }
+            pages[i] = page;
+        }
+        return pages;
+    }
+
+    /**
+     * Allocates pages for a message, waiting up to the specified time for other messages to be released.
+     * @return pages of the message or {@code null} if the arena had no space for it for the whole wait time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    int[] allocate(int bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        int[] pages = allocate(bytes);
+        if (pages != null || getPageCount(bytes) > maxPages) {
+            return pages;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            // releasing thread checks for waiters after returning its pages, so they are seen by the next attempt
+            waiters.incrementAndGet();
+            try {
+                while ((pages = allocate(bytes)) == null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                return pages;
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns pages of a message to the arena.
+     */
+    void release(int[] pages) {
+        for (int page : pages) {
+            // ring buffer holds every page, but its slot may still be taken by a thread polling it
+            while (!freePages.offer(pageNumbers[page])) {
+                Thread.yield();
+            }
+        }
+        availablePages.addAndGet(pages.length);
+
+        if (waiters.get() > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Copies message into its pages.
+     * @param pages pages allocated for the message
+     * @param message encoded message
+     * @param length size of the message, in bytes
+     */
+    void write(int[] pages, byte[] message, int length) {
+        for (int i = 0, offset = 0; offset < length; i++, offset += PAGE_SIZE) {
+            page(pages[i]).put(message, offset, Math.min(PAGE_SIZE, length - offset));
+        }
+    }
+
+    /**
+     * Copies message from its pages.
+     * @param pages pages of the message
+     * @param message array receiving the message
+     * @param length size of the message, in bytes
+     */
+    void read(int[] pages, byte[] message, int length) {
+        for (int i = 0, offset = 0; offset < length; i++, offset += PAGE_SIZE) {
+            page(pages[i]).get(message, offset, Math.min(PAGE_SIZE, length - offset));
+        }
+    }
+
+    /**
+     * @return size of direct memory taken by messages, in bytes
+     */
+    long getUsedBytes() {
+        return (long) (maxPages - availablePages.get()) * PAGE_SIZE;
+    }
+
+    /**
+     * @return size of direct memory allocated by the arena so far, in bytes
+     */
+    long getAllocatedBytes() {
+        return (long) allocatedPages * PAGE_SIZE;
+    }
+
+    private static int getPageCount(int bytes) {
+        return Math.max(1, (bytes + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * Allocates the next chunk of direct memory and adds its pages to the free ones, unless another thread has just
+     * done that.
+     */
+    private synchronized void grow() {
+        int allocated = allocatedPages;
+        if (allocated == maxPages || freePages.size() > 0) {
+            return;
+        }
+
+        int pages = Math.min(CHUNK_PAGES, maxPages - allocated);
+        chunks[allocated / CHUNK_PAGES] = ByteBuffer.allocateDirect(pages * PAGE_SIZE);
+        for (int page = allocated; page < allocated + pages; page++) {
+            pageNumbers[page] = page;
+            freePages.offer(pageNumbers[page]);
+        }
+        allocatedPages = allocated + pages;
+    }
+
+    /**
+     * @return buffer positioned at the start of the page and limited to its end; chunk itself is shared by threads
+     * copying other pages, so it's accessed through a view with its own position
+     */
+    private ByteBuffer page(int page) {
+        ByteBuffer buffer = chunks[page / CHUNK_PAGES].duplicate();
+        int start = page % CHUNK_PAGES * PAGE_SIZE;
+        buffer.limit(start + PAGE_SIZE).position(start);
+        return buffer;
+    }
+}
@@ -0,0 +1,228 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+import com.amazonaws.services.logs.model.InputLogEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging event buffered by CloudWatch appender.
+ * <p>
+ * Entry is either formatted by the logging thread, or keeps the original event to be formatted later by the worker,
+ * when deferred layout is enabled. Formatted message of a queued entry may be moved into {@link EventArena},
+ * and is moved back to the heap when the worker formats the entry.
+ */
+final class LogEntry {
+    private static final String TRUNCATION_MARKER = " [truncated]";
+    private static final int MAX_PART_MARKER_BYTES = 32;
+
+    private final long timestamp;
+
+    private ILoggingEvent event;
+    private String message;
+    private int messageBytes;
+    private boolean flushNow;
+    private Priority priority = Priority.NORMAL;
+    private EventArena arena;
+    private int[] pages;
+
+    private LogEntry(long timestamp, ILoggingEvent event, String message) {
+        this.timestamp = timestamp;
+        this.event = event;
+        this.message = message;
+        this.messageBytes = -1;
+    }
+
+    /**
+     * Creates entry with already formatted message.
+     */
+    static LogEntry formatted(long timestamp, String message) {
+        return new LogEntry(timestamp, null, message);
+    }
+
+    /**
+     * Creates entry which should be formatted later.
+     * @param event logging event, already prepared for deferred processing
+     */
+    static LogEntry deferred(ILoggingEvent event) {
+        return new LogEntry(event.getTimeStamp(), event, null);
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return formatted message; available after {@link #format(Layout)}
+     */
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * Marks entry as one which should be sent without waiting for more events, e.g. an error.
+     */
+    void setFlushNow() {
+        flushNow = true;
+    }
+
+    boolean isFlushNow() {
+        return flushNow;
+    }
+
+    /**
+     * Sets priority of the entry, which stays with it when it takes free space of a lower priority lane.
+     */
+    void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    Priority getPriority() {
+        return priority;
+    }
+
+    boolean isFormatted() {
+        return event == null;
+    }
+
+    /**
+     * Formats the event, if not formatted yet, and calculates size of its UTF-8 representation.
+     * @param layout layout for message formatting
+     */
+    void format(Layout<ILoggingEvent> layout) {
+        if (pages != null) {
+            byte[] bytes = new byte[messageBytes];
+            arena.read(pages, bytes, messageBytes);
+            release();
+            message = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (event != null) {
+            message = layout.doLayout(event);
+            event = null;
+        }
+        if (messageBytes < 0) {
+            messageBytes = LogEventBatch.utf8Length(message);
+        }
+    }
+
+    /**
+     * Moves formatted message into the arena as UTF-8, so that the queued entry keeps no message on the heap;
+     * encoded copy made meanwhile is garbage once it's written. Entries formatted later, and messages exceeding event
+     * size limit of the sink, which are truncated or split anyway, stay on the heap.
+     * @param arena arena to move the message into
+     * @param maxEventBytes maximum size of event message of the sink, in bytes
+     * @return {@code true} if message was moved or stays on the heap; {@code false} if the arena has no space for it
+     */
+    boolean encode(EventArena arena, int maxEventBytes) {
+        byte[] bytes = getEncodableMessage(maxEventBytes);
+        return bytes == null || store(arena, arena.allocate(bytes.length), bytes);
+    }
+
+    /**
+     * Moves formatted message into the arena, waiting up to the specified time for space in it.
+     * @see #encode(EventArena, int)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean encode(EventArena arena, int maxEventBytes, long timeout, TimeUnit unit) throws InterruptedException {
+        byte[] bytes = getEncodableMessage(maxEventBytes);
+        return bytes == null || store(arena, arena.allocate(bytes.length, timeout, unit), bytes);
+    }
+
+    /**
+     * @return UTF-8 message to be moved into the arena or {@code null} if the entry stays on the heap
+     */
+    private byte[] getEncodableMessage(int maxEventBytes) {
+        if (event != null || pages != null) {
+            return null;
+        }
+
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxEventBytes) {
+            messageBytes = bytes.length;
+            return null;
+        }
+        return bytes;
+    }
+
+    private boolean store(EventArena arena, int[] allocated, byte[] bytes) {
+        if (allocated == null) {
+            return false;
+        }
+
+        arena.write(allocated, bytes, bytes.length);
+        this.arena = arena;
+        this.pages = allocated;
+        messageBytes = bytes.length;
+        message = null;
+        return true;
+    }
+
+    /**
+     * Returns arena memory of the message, if any, e.g. when the entry is discarded.
+     */
+    void release() {
+        if (pages != null) {
+            arena.release(pages);
+            pages = null;
+            arena = null;
+        }
+    }
+
+    /**
+     * @return size of UTF-8 representation of the message; available after {@link #format(Layout)}
+     */
+    int getMessageBytes() {
+        return messageBytes;
+    }
+
+    /**
+     * Truncates message to the given UTF-8 size, marking the end of the truncated message.
+     * @param maxBytes maximum message size, in bytes
+     * @return {@code true} if message was truncated
+     */
+    boolean truncate(int maxBytes) {
+        if (messageBytes <= maxBytes) {
+            return false;
+        }
+
+        int end = LogEventBatch.utf8Prefix(message, maxBytes - TRUNCATION_MARKER.length());
+        message = new StringBuilder(end + TRUNCATION_MARKER.length()).append(message, 0, end).append(TRUNCATION_MARKER)
+                .toString();
+        messageBytes = LogEventBatch.utf8Length(message);
+        return true;
+    }
+
+    /**
+     * Splits message into parts of the given UTF-8 size, each one ending with its number, e.g. {@code " [part 2/3]"}.
+     * Parts have the same timestamp, so they stay in order within a batch.
+     * @param maxBytes maximum size of a part, in bytes
+     * @return formatted parts of the message
+     */
+    List<LogEntry> split(int maxBytes) {
+        List<Integer> ends = new ArrayList<>();
+        for (int start = 0; start < message.length(); start = ends.get(ends.size() - 1)) {
+            ends.add(LogEventBatch.utf8Prefix(message, start, maxBytes - MAX_PART_MARKER_BYTES));
+        }
+
+        List<LogEntry> parts = new ArrayList<>(ends.size());
+        int start = 0;
+        for (int i = 0; i < ends.size(); i++) {
+            int end = ends.get(i);
+            String part = new StringBuilder(end - start + MAX_PART_MARKER_BYTES).append(message, start, end)
+                    .append(" [part ").append(i + 1).append('/').append(ends.size()).append(']').toString();
+            LogEntry entry = formatted(timestamp, part);
+            entry.messageBytes = LogEventBatch.utf8Length(part);
+            parts.add(entry);
+            start = end;
+        }
+        return parts;
+    }
+
+    InputLogEvent toInputLogEvent() {
+        return new InputLogEvent().withTimestamp(timestamp).withMessage(message);
+    }
+}
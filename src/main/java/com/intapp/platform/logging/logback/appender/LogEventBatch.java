@@ -0,0 +1,306 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import com.intapp.platform.logging.logback.sink.SinkLimits;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accumulates log events for a single request of the sink, keeping the batch within the sink limits (CloudWatch Logs
+ * API limits by default).
+ * <p>
+ * Batch size is tracked as the sum of UTF-8 encoded messages plus fixed per-event overhead,
+ * as calculated by the service.
+ */
+class LogEventBatch {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int maxBatchCount;
+    private final int maxBatchBytes;
+    private final int eventOverheadBytes;
+    private final long maxBatchTimeSpan;
+
+    // parallel arrays are reused between batches, so assembling a batch allocates nothing in steady state
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private String[] messages = new String[INITIAL_CAPACITY];
+    private long[] sortTimestamps = new long[0];
+    private String[] sortMessages = new String[0];
+
+    private int size;
+    private int bytes;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private boolean ordered = true;
+
+    LogEventBatch() {
+        this(CloudWatchLogsSink.LIMITS);
+    }
+
+    LogEventBatch(SinkLimits limits) {
+        maxBatchCount = limits.getMaxBatchCount();
+        maxBatchBytes = limits.getMaxBatchBytes();
+        eventOverheadBytes = limits.getEventOverheadBytes();
+        maxBatchTimeSpan = limits.getMaxBatchTimeSpan();
+    }
+
+    /**
+     * Adds event to this batch if it fits in request limits.
+     * @param event log event with message not larger than event size limit
+     * @return {@code true} if event was added; {@code false} if batch should be sent before adding this event
+     */
+    boolean add(InputLogEvent event) {
+        return add(event, utf8Length(event.getMessage()));
+    }
+
+    /**
+     * Adds event with known message size to this batch if it fits in request limits.
+     * @param event log event
+     * @param messageBytes size of UTF-8 representation of event message, not larger than event size limit
+     * @return {@code true} if event was added; {@code false} if batch should be sent before adding this event
+     */
+    boolean add(InputLogEvent event, int messageBytes) {
+        return add(event.getTimestamp(), event.getMessage(), messageBytes);
+    }
+
+    /**
+     * Adds event with known message size to this batch if it fits in request limits.
+     * @param timestamp event timestamp
+     * @param message event message
+     * @param messageBytes size of UTF-8 representation of event message, not larger than event size limit
+     * @return {@code true} if event was added; {@code false} if batch should be sent before adding this event
+     */
+    boolean add(long timestamp, String message, int messageBytes) {
+        int eventBytes = messageBytes + eventOverheadBytes;
+
+        if (size > 0) {
+            if (size >= maxBatchCount || bytes + eventBytes > maxBatchBytes) {
+                return false;
+            }
+            if (Math.max(maxTimestamp, timestamp) - Math.min(minTimestamp, timestamp) > maxBatchTimeSpan) {
+                return false;
+            }
+            ordered &= timestamp >= timestamps[size - 1];
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        } else {
+            minTimestamp = timestamp;
+            maxTimestamp = timestamp;
+        }
+
+        if (size == timestamps.length) {
+            int capacity = Math.min(maxBatchCount, size << 1);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+        timestamps[size] = timestamp;
+        messages[size] = message;
+        size++;
+        bytes += eventBytes;
+        return true;
+    }
+
+    /**
+     * @return {@code true} if no more events can be added to this batch
+     */
+    boolean isFull() {
+        return size >= maxBatchCount || bytes + eventOverheadBytes >= maxBatchBytes;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return request size of accumulated events, in bytes
+     */
+    int getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes all accumulated events from this batch.
+     * @return events in chronological order, as required by {@code PutLogEvents}
+     */
+    List<InputLogEvent> drain() {
+        List<InputLogEvent> events = new ArrayList<>(size);
+        drainTo(events);
+        return events;
+    }
+
+    /**
+     * Removes all accumulated events from this batch, replacing contents of the list with them. Events already in
+     * the list are reused, e.g. the ones of a pooled request, so that draining allocates no new events.
+     * @param events list to fill with events in chronological order, as required by {@code PutLogEvents}
+     */
+    void drainTo(List<InputLogEvent> events) {
+        if (!ordered) {
+            sort();
+        }
+
+        int reused = Math.min(size, events.size());
+        for (int i = 0; i < reused; i++) {
+            InputLogEvent event = events.get(i);
+            event.setTimestamp(timestamps[i]);
+            event.setMessage(messages[i]);
+        }
+        if (events.size() > size) {
+            events.subList(size, events.size()).clear();
+        }
+        for (int i = reused; i < size; i++) {
+            events.add(new InputLogEvent().withTimestamp(timestamps[i]).withMessage(messages[i]));
+        }
+
+        Arrays.fill(messages, 0, size, null);
+        size = 0;
+        bytes = 0;
+        ordered = true;
+    }
+
+    /**
+     * Sorts events by timestamp, keeping the order of events with equal timestamps. Events from a few producers are
+     * nearly ordered, so runs which are already in order are merged pairwise rather than sorted from scratch.
+     */
+    private void sort() {
+        if (sortTimestamps.length < size) {
+            sortTimestamps = new long[timestamps.length];
+            sortMessages = new String[timestamps.length];
+        }
+
+        long[] sourceTimestamps = timestamps;
+        String[] sourceMessages = messages;
+        long[] targetTimestamps = sortTimestamps;
+        String[] targetMessages = sortMessages;
+        int runs;
+        do {
+            runs = 0;
+            for (int start = 0; start < size; runs++) {
+                int middle = runEnd(sourceTimestamps, start);
+                int end = middle < size ? runEnd(sourceTimestamps, middle) : size;
+                merge(sourceTimestamps, sourceMessages, start, middle, end, targetTimestamps, targetMessages);
+                start = end;
+            }
+
+            long[] mergedTimestamps = targetTimestamps;
+            String[] mergedMessages = targetMessages;
+            targetTimestamps = sourceTimestamps;
+            targetMessages = sourceMessages;
+            sourceTimestamps = mergedTimestamps;
+            sourceMessages = mergedMessages;
+        } while (runs > 1);
+
+        Arrays.fill(targetMessages, 0, size, null);
+        timestamps = sourceTimestamps;
+        messages = sourceMessages;
+        sortTimestamps = targetTimestamps;
+        sortMessages = targetMessages;
+    }
+
+    /**
+     * @return end of the ordered run starting at the given index
+     */
+    private int runEnd(long[] values, int start) {
+        int end = start + 1;
+        while (end < size && values[end] >= values[end - 1]) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Merges ordered runs {@code [start, middle)} and {@code [middle, end)} into the same range of target arrays,
+     * taking the left one first on equal timestamps.
+     */
+    private static void merge(long[] timestamps, String[] messages, int start, int middle, int end,
+            long[] targetTimestamps, String[] targetMessages) {
+        int left = start;
+        int right = middle;
+        for (int i = start; i < end; i++) {
+            if (right >= end || left < middle && timestamps[left] <= timestamps[right]) {
+                targetTimestamps[i] = timestamps[left];
+                targetMessages[i] = messages[left++];
+            } else {
+                targetTimestamps[i] = timestamps[right];
+                targetMessages[i] = messages[right++];
+            }
+        }
+    }
+
+    /**
+     * Calculates length of UTF-8 representation of the string without encoding it.
+     * @param value string value
+     * @return number of bytes in UTF-8 encoding
+     */
+    static int utf8Length(CharSequence value) {
+        int length = value.length();
+        int bytes = length;
+
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch >= 0x80) {
+                if (ch < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 2;     // 4 bytes for two chars of a surrogate pair
+                    i++;
+                } else {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds the longest prefix of the string which fits into given number of UTF-8 bytes,
+     * without splitting surrogate pairs.
+     * @param value string value
+     * @param maxBytes maximum number of bytes
+     * @return length of the prefix, in chars
+     */
+    static int utf8Prefix(CharSequence value, int maxBytes) {
+        return utf8Prefix(value, 0, maxBytes);
+    }
+
+    /**
+     * Finds the longest part of the string starting at the given index which fits into given number of UTF-8 bytes,
+     * without splitting surrogate pairs.
+     * @param value string value
+     * @param from index of the first char of the part
+     * @param maxBytes maximum number of bytes
+     * @return index following the last char of the part
+     */
+    static int utf8Prefix(CharSequence value, int from, int maxBytes) {
+        int length = value.length();
+        int bytes = 0;
+
+        for (int i = from; i < length; i++) {
+            char ch = value.charAt(i);
+            int charBytes;
+            int chars = 1;
+            if (ch < 0x80) {
+                charBytes = 1;
+            } else if (ch < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                charBytes = 4;
+                chars = 2;
+            } else {
+                charBytes = 3;
+            }
+
+            if (bytes + charBytes > maxBytes) {
+                return i;
+            }
+            bytes += charBytes;
+            i += chars - 1;
+        }
+        return length;
+    }
+}
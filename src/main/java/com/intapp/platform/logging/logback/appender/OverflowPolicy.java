@@ -0,0 +1,27 @@
+package com.intapp.platform.logging.logback.appender;
+
+/**
+ * Defines what CloudWatch appender does with a logging event when its internal buffer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Discard the new event.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the oldest buffered event to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Wait for free space up to the configured maximum block time, then discard the new event.
+     */
+    BLOCK,
+
+    /**
+     * Reject the new event immediately, reporting it as an error. Rejected events are also counted separately from
+     * discarded ones ({@link AppenderMetrics#getRejectedEvents()}), so that they can be alerted on.
+     */
+    FAIL_FAST
+}
@@ -0,0 +1,18 @@
+package com.intapp.platform.logging.logback.appender;
+
+/**
+ * Defines what CloudWatch appender does with a logging event exceeding event size limit of the sink (256 KB for
+ * CloudWatch Logs), which would otherwise fail the whole request.
+ */
+public enum OversizePolicy {
+    /**
+     * Cut the event at the size limit, ending it with {@code " [truncated]"} marker.
+     */
+    TRUNCATE,
+
+    /**
+     * Send the event as several events of the maximum size, each one ending with its part number,
+     * e.g. {@code " [part 2/3]"}.
+     */
+    SPLIT
+}
@@ -0,0 +1,30 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Priority of a logging event in the internal buffer. Lower priority events are discarded first when it's full.
+ */
+enum Priority {
+    /**
+     * {@code ERROR} and {@code WARN} events.
+     */
+    HIGH,
+
+    /**
+     * {@code INFO} events.
+     */
+    NORMAL,
+
+    /**
+     * {@code DEBUG} and {@code TRACE} events.
+     */
+    LOW;
+
+    static Priority of(Level level) {
+        if (level.isGreaterOrEqual(Level.WARN)) {
+            return HIGH;
+        }
+        return level.isGreaterOrEqual(Level.INFO) ? NORMAL : LOW;
+    }
+}
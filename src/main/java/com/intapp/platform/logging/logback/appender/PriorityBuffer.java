@@ -0,0 +1,201 @@
+package com.intapp.platform.logging.logback.appender;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bounded buffer with a separate {@link RingBuffer} lane per {@link Priority}.
+ * <p>
+ * Each lane has its own capacity, so a flood of low priority events can't take the space reserved for higher priority
+ * ones, and the consumer takes elements of higher priority lanes first. A higher priority element which doesn't fit
+ * into its lane may take free space of a lower priority lane or the place of the oldest lower priority element, see
+ * {@link #offerLower(Object, Priority, Consumer)}. As with {@link RingBuffer}, only a single thread is expected to wait
+ * for elements.
+ * @param <E> type of elements
+ */
+final class PriorityBuffer<E> {
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final RingBuffer<E>[] lanes;
+    private final Function<? super E, Priority> priorityOf;
+
+    /**
+     * Capacities are rounded up to the power of two, see {@link RingBuffer}.
+     * @param highCapacity capacity of the lane for {@link Priority#HIGH} elements
+     * @param normalCapacity capacity of the lane for {@link Priority#NORMAL} elements
+     * @param lowCapacity capacity of the lane for {@link Priority#LOW} elements
+     * @param priorityOf priority of an element, which may be in the lane of a lower priority
+     */
+    @SuppressWarnings("unchecked")
+    PriorityBuffer(int highCapacity, int normalCapacity, int lowCapacity, Function<? super E, Priority> priorityOf) {
+        this.priorityOf = priorityOf;
+        lanes = (RingBuffer<E>[]) new RingBuffer<?>[PRIORITIES.length];
+        lanes[Priority.HIGH.ordinal()] = new RingBuffer<>(highCapacity);
+        lanes[Priority.NORMAL.ordinal()] = new RingBuffer<>(normalCapacity);
+        lanes[Priority.LOW.ordinal()] = new RingBuffer<>(lowCapacity);
+    }
+
+    /**
+     * Inserts element into the lane of its priority without waiting.
+     * @return {@code true} if element was inserted; {@code false} if the lane is full
+     */
+    boolean offer(E element, Priority priority) {
+        return lanes[priority.ordinal()].offer(element);
+    }
+
+    /**
+     * Inserts element into the lane of its priority, waiting up to the specified time for free space.
+     * @return {@code true} if element was inserted; {@code false} if the lane was full for the whole wait time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean offer(E element, Priority priority, long timeout, TimeUnit unit) throws InterruptedException {
+        return lanes[priority.ordinal()].offer(element, timeout, unit);
+    }
+
+    /**
+     * Inserts element into a lane of lower priority, the lowest one first: into its free space if there is any,
+     * otherwise in place of a lower priority element, see {@link #pollLower(Priority)}.
+     * @param element element to insert
+     * @param priority priority of the element
+     * @param evicted receives elements removed to make room for the inserted one
+     * @return {@code true} if element was inserted; {@code false} if there are no lower priority elements to evict
+     */
+    boolean offerLower(E element, Priority priority, Consumer<? super E> evicted) {
+        do {
+            for (int i = lanes.length - 1; i > priority.ordinal(); i--) {
+                if (lanes[i].offer(element)) {
+                    return true;
+                }
+            }
+            // freed space may be taken by another producer first, so the next element is evicted then
+        } while (evict(pollLower(priority), evicted));
+        return false;
+    }
+
+    /**
+     * Retrieves and removes the oldest element of lower priority than the given one, from the lowest priority lane
+     * first. Elements of the given or higher priority which took free space of a lower priority lane aren't removed,
+     * they are moved to the back of the lane instead, unless another producer takes their place meanwhile.
+     * @return the element or {@code null} if there are no lower priority elements
+     */
+    E pollLower(Priority priority) {
+        for (int i = lanes.length - 1; i > priority.ordinal(); i--) {
+            RingBuffer<E> lane = lanes[i];
+            for (int remaining = lane.size(); remaining > 0; remaining--) {
+                E oldest = lane.poll();
+                if (oldest == null) {
+                    break;
+                }
+                if (priorityOf.apply(oldest).compareTo(priority) > 0 || !lane.offer(oldest)) {
+                    return oldest;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static <E> boolean evict(E element, Consumer<? super E> evicted) {
+        if (element == null) {
+            return false;
+        }
+        evicted.accept(element);
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the oldest element of the lane without waiting.
+     * @return the oldest element of the given priority or {@code null} if its lane is empty
+     */
+    E poll(Priority priority) {
+        return lanes[priority.ordinal()].poll();
+    }
+
+    /**
+     * Retrieves and removes the oldest element of the highest priority non-empty lane without waiting.
+     * @return the element or {@code null} if buffer is empty
+     */
+    E poll() {
+        for (RingBuffer<E> lane : lanes) {
+            E element = lane.poll();
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves and removes the oldest element of the highest priority non-empty lane, waiting up to the specified time
+     * for any element to become available.
+     * @return the element or {@code null} if buffer was empty for the whole wait time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E element = poll();
+        if (element != null) {
+            return element;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread consumer = Thread.currentThread();
+        try {
+            for (;;) {
+                // publish waiting state before re-checking, so producers can't miss it
+                for (RingBuffer<E> lane : lanes) {
+                    lane.setWaitingConsumer(consumer);
+                }
+
+                element = poll();
+                if (element != null) {
+                    return element;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            for (RingBuffer<E> lane : lanes) {
+                lane.setWaitingConsumer(null);
+            }
+        }
+    }
+
+    /**
+     * Removes all elements from the buffer.
+     * @return number of removed elements
+     */
+    int clear() {
+        int cleared = 0;
+        for (RingBuffer<E> lane : lanes) {
+            cleared += lane.clear();
+        }
+        return cleared;
+    }
+
+    /**
+     * @return approximate number of elements in the buffer
+     */
+    int size() {
+        int size = 0;
+        for (RingBuffer<E> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return capacity of the lane for the given priority
+     */
+    int capacity(Priority priority) {
+        return lanes[priority.ordinal()].capacity();
+    }
+}
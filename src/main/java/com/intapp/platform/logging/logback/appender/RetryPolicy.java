@@ -0,0 +1,88 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether failed {@code PutLogEvents} request should be retried and how long to wait before retrying.
+ * <p>
+ * Delays grow exponentially with "full jitter", so that retrying clients spread out instead of hitting the service
+ * simultaneously. Retries are limited by a budget: each retry spends a token and each successful request earns a
+ * fraction of one, so during long outages retries can't amplify the load beyond a fixed ratio of successful traffic.
+ */
+class RetryPolicy {
+    private static final int SUCCESSES_PER_RETRY = 10;
+    private static final int BUDGET_CAPACITY = 10 * SUCCESSES_PER_RETRY;
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    /**
+     * Retry budget, in successful requests.
+     */
+    private int budget = BUDGET_CAPACITY;
+
+    /**
+     * @param maxRetries maximum number of retries of a single request
+     * @param baseDelay delay before the first retry, in ms
+     * @param maxDelay maximum delay between retries, in ms
+     */
+    RetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Checks if request failed with the given exception should be retried, spending retry budget if so.
+     * @param ex request failure
+     * @param retries number of retries already made for the request
+     * @return {@code true} if request should be retried
+     */
+    synchronized boolean shouldRetry(AmazonClientException ex, int retries) {
+        if (retries >= maxRetries || !isRetryable(ex) || budget < SUCCESSES_PER_RETRY) {
+            return false;
+        }
+
+        budget -= SUCCESSES_PER_RETRY;
+        return true;
+    }
+
+    /**
+     * Records successful request, earning retry budget.
+     */
+    synchronized void onSuccess() {
+        budget = Math.min(BUDGET_CAPACITY, budget + 1);
+    }
+
+    /**
+     * @param retries number of retries already made for the request
+     * @return delay before the next retry, in ms
+     */
+    long getDelay(int retries) {
+        long ceiling = baseDelay << Math.min(retries, 20);
+        return ThreadLocalRandom.current().nextLong(Math.min(ceiling, maxDelay) + 1);
+    }
+
+    /**
+     * @return {@code true} if failure is caused by service throttling the requests
+     */
+    static boolean isThrottling(AmazonClientException ex) {
+        return ex instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException) ex);
+    }
+
+    /**
+     * @return {@code true} if the same request may succeed later: throttling, server or network errors
+     */
+    static boolean isRetryable(AmazonClientException ex) {
+        if (ex instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) ex;
+            return RetryUtils.isThrottlingException(serviceException) || serviceException.getStatusCode() >= 500;
+        }
+        return ex.isRetryable();
+    }
+}
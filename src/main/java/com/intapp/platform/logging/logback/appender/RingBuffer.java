@@ -0,0 +1,221 @@
+package com.intapp.platform.logging.logback.appender;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue backed by preallocated arrays.
+ * <p>
+ * Producers and consumers claim slots with a single CAS on their position counter and each slot carries a sequence
+ * number telling whether it is ready to be written or read, so no per-element nodes are allocated and producers never
+ * contend on a lock. Any thread may poll, which allows producers to evict the oldest element on overflow,
+ * but only a single thread is expected to wait for elements with {@link #poll(long, TimeUnit)} or
+ * {@link #setWaitingConsumer(Thread)}.
+ * @param <E> type of elements
+ */
+final class RingBuffer<E> {
+    private static final long MIN_PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PRODUCER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Consumer thread waiting for new elements, if any.
+     */
+    private volatile Thread waitingConsumer;
+
+    /**
+     * @param capacity minimum capacity of the buffer, rounded up to the power of two (but not less than 2)
+     */
+    RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity must be between 1 and 2^30: " + capacity);
+        }
+
+        // single slot can't distinguish written and free states by its sequence number
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Inserts element without waiting.
+     * @param element element to insert
+     * @return {@code true} if element was inserted; {@code false} if buffer is full
+     */
+    boolean offer(E element) {
+        long position = tail.get();
+        for (;;) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // full fence: publishing must be visible before checking for the waiting consumer
+                    sequences.set(index, position + 1);
+                    signalConsumer();
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Inserts element, waiting up to the specified time for free space.
+     * @param element element to insert
+     * @param timeout maximum time to wait
+     * @param unit time unit of {@code timeout}
+     * @return {@code true} if element was inserted; {@code false} if buffer was full for the whole wait time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(element)) {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long park = MIN_PRODUCER_PARK_NANOS;
+        for (;;) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+
+            LockSupport.parkNanos(this, Math.min(park, remaining));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (offer(element)) {
+                return true;
+            }
+            park = Math.min(park << 1, MAX_PRODUCER_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Retrieves and removes the oldest element without waiting.
+     * @return the oldest element or {@code null} if buffer is empty
+     */
+    E poll() {
+        long position = head.get();
+        for (;;) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Retrieves and removes the oldest element, waiting up to the specified time for it to become available.
+     * @param timeout maximum time to wait
+     * @param unit time unit of {@code timeout}
+     * @return the oldest element or {@code null} if buffer was empty for the whole wait time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E element = poll();
+        if (element != null) {
+            return element;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (;;) {
+                // publish waiting state before re-checking, so producers can't miss it
+                setWaitingConsumer(Thread.currentThread());
+
+                element = poll();
+                if (element != null) {
+                    return element;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            setWaitingConsumer(null);
+        }
+    }
+
+    /**
+     * Registers thread to be unparked when an element is inserted, so that a consumer can wait for elements of
+     * several buffers at once. The thread must re-check the buffer after registering and before parking.
+     * @param consumer waiting thread or {@code null} to stop waiting
+     */
+    void setWaitingConsumer(Thread consumer) {
+        waitingConsumer = consumer;
+    }
+
+    /**
+     * Removes all elements from the buffer.
+     * @return number of removed elements
+     */
+    int clear() {
+        int cleared = 0;
+        while (poll() != null) {
+            cleared++;
+        }
+        return cleared;
+    }
+
+    /**
+     * @return approximate number of elements in the buffer
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    private void signalConsumer() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import lombok.Setter;
+
+import java.util.Map;
+
+/**
+ * Routes logging events matching all of the set conditions to another log group and/or stream than the one
+ * of {@link AmazonCloudWatchAppender}. Rules are checked in the order they were added and the first matching one wins;
+ * events matching no rule go to the appender's own log stream.
+ */
+public class RoutingRule {
+
+    /**
+     * Name of the logger whose events are routed, including events of its descendants (e.g. {@code com.acme.audit}).
+     */
+    @Setter
+    private String logger;
+
+    /**
+     * Minimum level of routed events.
+     */
+    private Level level;
+
+    /**
+     * MDC key which routed events must have (e.g. {@code tenant}).
+     */
+    @Setter
+    private String mdcKey;
+
+    /**
+     * Value of {@code mdcKey} which routed events must have. Any value matches when not set.
+     */
+    @Setter
+    private String mdcValue;
+
+    /**
+     * Name of the CloudWatch log group for routed events. The appender's log group is used when not set.
+     */
+    @Setter
+    private String logGroup;
+
+    /**
+     * Name of the CloudWatch log stream for routed events. The appender's log stream is used when not set.
+     */
+    @Setter
+    private String logStream;
+
+    public void setLevel(String level) {
+        this.level = Level.toLevel(level, null);
+    }
+
+    public String getLogGroup() {
+        return logGroup;
+    }
+
+    public String getLogStream() {
+        return logStream;
+    }
+
+    /**
+     * Checks the logger condition, which depends on logger name only and so can be cached per logger.
+     * @param loggerName name of the event logger
+     * @return {@code true} if events of the logger may match this rule
+     */
+    boolean matchesLogger(String loggerName) {
+        if (logger == null) {
+            return true;
+        }
+        return loggerName.startsWith(logger)
+                && (loggerName.length() == logger.length() || loggerName.charAt(logger.length()) == '.');
+    }
+
+    /**
+     * Checks conditions on event level and MDC; the logger condition is expected to be checked already.
+     * @param event logging event
+     * @return {@code true} if the event matches this rule
+     */
+    boolean matches(ILoggingEvent event) {
+        if (level != null && !event.getLevel().isGreaterOrEqual(level)) {
+            return false;
+        }
+        if (mdcKey == null) {
+            return true;
+        }
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        String value = mdc == null ? null : mdc.get(mdcKey);
+        return value != null && (mdcValue == null || mdcValue.equals(value));
+    }
+}
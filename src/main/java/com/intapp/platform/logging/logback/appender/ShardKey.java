@@ -0,0 +1,16 @@
+package com.intapp.platform.logging.logback.appender;
+
+/**
+ * Defines how CloudWatch appender assigns logging events to log stream shards.
+ */
+public enum ShardKey {
+    /**
+     * Events of the same logging thread go to the same shard, preserving per-thread order.
+     */
+    THREAD,
+
+    /**
+     * Events of the same logger go to the same shard, preserving per-logger order.
+     */
+    LOGGER
+}
@@ -0,0 +1,492 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import com.intapp.platform.logging.logback.sink.SinkLimits;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Disk-backed write-ahead buffer for log events which can't be kept in memory or sent to CloudWatch.
+ * <p>
+ * Events are appended to fixed-size memory-mapped segment files, so writing an event is a memory copy into page cache
+ * without system calls. Each segment starts with a header holding position of the first unsent record; records are
+ * stored as {@code [int length + 1][int CRC32][long timestamp][UTF-8 message]}, so that an empty message is still
+ * a record, and zero length marks the end of written data. Segments left by the previous run are replayed in order
+ * after restart, up to the first record which was written partially or doesn't match its checksum, e.g. stale data
+ * of a record overwritten before a crash; fully sent segments are deleted.
+ * <p>
+ * Writers don't lock the buffer, except to roll over to a new segment: each one reserves space for its record in the
+ * current segment with a CAS and copies the record there, and the reader takes records only up to the position below
+ * which all reserved records are complete. A segment is sealed when it's rolled over, so that a writer which still
+ * sees it can't reserve space in it behind the reader.
+ * <p>
+ * Reading is transactional: records returned by {@link #read(int, int)} are removed only by {@link #commit()},
+ * and {@link #rollback()} makes them available again, so events are delivered at least once. Reading is expected
+ * from a single thread.
+ */
+final class SpillBuffer implements Closeable {
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{16})\\.spill");
+    private static final String LOCK_FILE_NAME = ".lock";
+
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 16;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final int eventOverheadBytes;
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * The last segment, which records are written to.
+     */
+    private volatile Segment writeSegment;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+
+    /**
+     * Index of the segment to read next record from, pending commit.
+     */
+    private int readSegment;
+
+    /**
+     * Position of the next record in the read segment, pending commit.
+     */
+    private int readPosition;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens buffer in the given directory, recovering segments left by previous run.
+     * @param directory directory for segment files; created if doesn't exist
+     * @param segmentSize size of a single segment file, in bytes
+     * @param maxSegments maximum number of segment files
+     * @throws IOException if directory can't be used or is already used by another process
+     */
+    SpillBuffer(File directory, int segmentSize, int maxSegments) throws IOException {
+        this(directory, segmentSize, maxSegments, CloudWatchLogsSink.LIMITS);
+    }
+
+    /**
+     * Opens buffer in the given directory, recovering segments left by previous run.
+     * @param directory directory for segment files; created if doesn't exist
+     * @param segmentSize size of a single segment file, in bytes
+     * @param maxSegments maximum number of segment files
+     * @param limits limits of the sink events are replayed to; a segment must be able to hold the largest event
+     * @throws IOException if directory can't be used or is already used by another process
+     */
+    SpillBuffer(File directory, int segmentSize, int maxSegments, SinkLimits limits) throws IOException {
+        if (segmentSize < SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES + limits.getMaxEventBytes()) {
+            throw new IllegalArgumentException("Spill segment size is too small to hold the largest event: " + segmentSize);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("Spill buffer must have at least one segment: " + maxSegments);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create spill directory " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.eventOverheadBytes = limits.getEventOverheadBytes();
+
+        lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        lock = lockFile.getChannel().tryLock();
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Spill directory is used by another process: " + directory);
+        }
+
+        recover();
+    }
+
+    /**
+     * Appends event to the buffer.
+     * @param timestamp event timestamp
+     * @param message formatted event message, not larger than maximum event size in UTF-8
+     * @return {@code true} if event was written; {@code false} if disk space budget is exhausted or buffer is closed
+     * @throws IOException if new segment file can't be created
+     */
+    boolean write(long timestamp, String message) throws IOException {
+        if (closed) {
+            return false;
+        }
+
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        int recordBytes = RECORD_HEADER_BYTES + bytes.length;
+        int checksum = checksum(timestamp, bytes);
+
+        Segment segment = writeSegment;
+        int position;
+        while ((position = segment == null ? -1 : segment.reserve(recordBytes)) < 0) {
+            if ((segment = rollOver(segment)) == null) {
+                return false;
+            }
+        }
+
+        ByteBuffer buffer = segment.map().duplicate();
+        buffer.putInt(position + 4, checksum);
+        buffer.putLong(position + 8, timestamp);
+        buffer.position(position + RECORD_HEADER_BYTES);
+        buffer.put(bytes);
+        // length is written last, so partially written record is never read after crash
+        buffer.putInt(position, bytes.length + 1);
+
+        segment.complete(recordBytes);
+        return true;
+    }
+
+    /**
+     * Seals the given write segment, which has no space for a record, and creates the next one, unless another writer
+     * has done that already.
+     * @param full write segment seen by the writer or {@code null} if there was none
+     * @return current write segment or {@code null} if disk space budget is exhausted or buffer is closed
+     */
+    private synchronized Segment rollOver(Segment full) throws IOException {
+        if (closed) {
+            return null;
+        }
+        if (writeSegment != full) {
+            return writeSegment;
+        }
+        if (segments.size() >= maxSegments) {
+            return null;
+        }
+
+        if (full != null) {
+            full.seal();
+        }
+        return createSegment(full == null ? 0 : full.id + 1);
+    }
+
+    /**
+     * Reads next records without removing them from the buffer.
+     * @param maxCount maximum number of records
+     * @param maxBytes maximum size of records, calculated with per-event overhead of the sink
+     * @return formatted log entries, in the order they were written
+     * @throws IOException if segment file can't be read
+     */
+    synchronized List<LogEntry> read(int maxCount, int maxBytes) throws IOException {
+        List<LogEntry> entries = new ArrayList<>();
+        int bytes = 0;
+
+        while (entries.size() < maxCount && readSegment < segments.size()) {
+            Segment segment = segments.get(readSegment);
+            if (readPosition >= segment.getReadableEnd()) {
+                // sealed segment is done once records still being written into it are complete
+                if (readPosition < segment.getEnd() || readSegment == segments.size() - 1) {
+                    break;
+                }
+                readSegment++;
+                readPosition = SEGMENT_HEADER_BYTES;
+                continue;
+            }
+
+            ByteBuffer buffer = segment.map().duplicate();
+            int length = buffer.getInt(readPosition) - 1;
+            if (bytes + length + eventOverheadBytes > maxBytes && !entries.isEmpty()) {
+                break;
+            }
+
+            long timestamp = buffer.getLong(readPosition + 8);
+            byte[] message = new byte[length];
+            buffer.position(readPosition + RECORD_HEADER_BYTES);
+            buffer.get(message);
+
+            entries.add(LogEntry.formatted(timestamp, new String(message, StandardCharsets.UTF_8)));
+            bytes += length + eventOverheadBytes;
+            readPosition += RECORD_HEADER_BYTES + length;
+        }
+        return entries;
+    }
+
+    /**
+     * Removes records returned by {@link #read(int, int)} since the last commit or rollback.
+     * @throws IOException if segment file can't be updated
+     */
+    synchronized void commit() throws IOException {
+        for (; readSegment > 0; readSegment--) {
+            segments.remove(0).delete();
+        }
+
+        if (!segments.isEmpty()) {
+            Segment segment = segments.get(0);
+            segment.readPosition = readPosition;
+            segment.map().putInt(0, readPosition);
+        }
+    }
+
+    /**
+     * Makes records returned by {@link #read(int, int)} since the last commit or rollback available for reading again.
+     */
+    synchronized void rollback() {
+        readSegment = 0;
+        readPosition = segments.isEmpty() ? SEGMENT_HEADER_BYTES : segments.get(0).readPosition;
+    }
+
+    /**
+     * @return {@code true} if there are no uncommitted records
+     */
+    synchronized boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.readPosition < segment.getEnd()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writeSegment = null;
+
+        for (Segment segment : segments) {
+            segment.unmap();
+        }
+        segments.clear();
+
+        lock.release();
+        lockFile.close();
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, fileName) -> SEGMENT_NAME.matcher(fileName).matches());
+        if (files == null) {
+            throw new IOException("Failed to list spill directory " + directory);
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (file.length() != segmentSize) {
+                // segment of a different size can't be mapped reliably, most likely left with other settings
+                continue;
+            }
+
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            matcher.matches();
+            Segment segment = new Segment(Long.parseLong(matcher.group(1)), file);
+
+            MappedByteBuffer buffer = segment.map();
+            int position = Math.max(SEGMENT_HEADER_BYTES, buffer.getInt(0));
+            segment.readPosition = position;
+
+            int length;
+            while (position + RECORD_HEADER_BYTES <= segmentSize
+                    && (length = buffer.getInt(position) - 1) >= 0
+                    && position + RECORD_HEADER_BYTES + length <= segmentSize
+                    && isIntact(buffer, position, length)) {
+                position += RECORD_HEADER_BYTES + length;
+            }
+            segment.recover(position);
+            if (!segments.isEmpty()) {
+                segments.get(segments.size() - 1).seal();
+            }
+            segments.add(segment);
+        }
+        writeSegment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+
+        // keep only segments which are read or written mapped
+        for (int i = 1; i < segments.size() - 1; i++) {
+            segments.get(i).unmap();
+        }
+        rollback();
+    }
+
+    /**
+     * @return {@code true} if record at the given position matches its checksum
+     */
+    private static boolean isIntact(MappedByteBuffer buffer, int position, int length) {
+        byte[] message = new byte[length];
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + RECORD_HEADER_BYTES);
+        record.get(message);
+        return record.getInt(position + 4) == checksum(record.getLong(position + 8), message);
+    }
+
+    private static int checksum(long timestamp, byte[] message) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (timestamp >>> shift));
+        }
+        crc.update(message);
+        return (int) crc.getValue();
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Segment segment = new Segment(id, new File(directory, String.format("segment-%016d.spill", id)));
+        segment.readPosition = SEGMENT_HEADER_BYTES;
+        segment.recover(SEGMENT_HEADER_BYTES);
+
+        segment.map().putInt(0, SEGMENT_HEADER_BYTES);
+        if (segments.size() > 1) {
+            // previous segment isn't written any more and not read yet
+            segments.get(segments.size() - 1).unmap();
+        }
+        segments.add(segment);
+        if (segments.size() == 1) {
+            rollback();
+        }
+        writeSegment = segment;
+        return segment;
+    }
+
+    /**
+     * Segment file of the buffer.
+     */
+    private final class Segment {
+        private final long id;
+        private final File file;
+
+        /**
+         * Position of the next record to reserve space for; past segment size once the segment is sealed.
+         */
+        private final AtomicInteger reserved = new AtomicInteger();
+
+        /**
+         * Size of records written completely since the segment was opened.
+         */
+        private final AtomicInteger completed = new AtomicInteger();
+
+        /**
+         * End of records when the segment was opened.
+         */
+        private int start;
+
+        private volatile MappedByteBuffer buffer;
+        private int readPosition;
+
+        /**
+         * End of records, set when the segment is sealed.
+         */
+        private int end;
+
+        /**
+         * End of records known to be written completely.
+         */
+        private int readableEnd;
+
+        private Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        /**
+         * Sets the position records are written from, e.g. recovered one.
+         */
+        private void recover(int position) {
+            start = position;
+            readableEnd = position;
+            reserved.set(position);
+        }
+
+        /**
+         * @return position of the space reserved for a record or {@code -1} if the segment has no space for it
+         */
+        private int reserve(int recordBytes) {
+            int position;
+            do {
+                position = reserved.get();
+                if (position + recordBytes > segmentSize) {
+                    return -1;
+                }
+            } while (!reserved.compareAndSet(position, position + recordBytes));
+            return position;
+        }
+
+        private void complete(int recordBytes) {
+            completed.addAndGet(recordBytes);
+        }
+
+        /**
+         * Stops reserving space in the segment.
+         */
+        private void seal() {
+            end = reserved.getAndSet(segmentSize + 1);
+        }
+
+        /**
+         * @return end of records, including ones still being written
+         */
+        private int getEnd() {
+            int position = reserved.get();
+            return position > segmentSize ? end : position;
+        }
+
+        /**
+         * @return end of records below which all reserved records are written completely
+         */
+        private int getReadableEnd() {
+            // records counted as completed were reserved before the end is read, so all of them are below it
+            int done = completed.get();
+            int position = getEnd();
+            if (start + done == position) {
+                readableEnd = position;
+            }
+            return readableEnd;
+        }
+
+        private MappedByteBuffer map() throws IOException {
+            MappedByteBuffer mapped = buffer;
+            return mapped != null ? mapped : remap();
+        }
+
+        private synchronized MappedByteBuffer remap() throws IOException {
+            MappedByteBuffer buffer = this.buffer;
+            if (buffer == null) {
+                // channel is closed by interrupt, e.g. of a worker aborted on stop which spills what it holds,
+                // so interrupt is deferred until the segment is mapped
+                boolean interrupted = Thread.interrupted();
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(segmentSize);
+                    buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+                    this.buffer = buffer;
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            return buffer;
+        }
+
+        private void unmap() {
+            MappedByteBuffer mapped = buffer;
+            if (mapped != null) {
+                mapped.force();
+                buffer = null;
+            }
+        }
+
+        private void delete() {
+            buffer = null;
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Holds low-level logging events of each trace until the trace turns out to be worth sending.
+ * <p>
+ * Events below the sampling level with a trace ID in MDC are kept in memory. When the trace logs an event of the
+ * trigger level or higher, or an event marked as sampled, held events are released in order, and further events of
+ * the trace pass through. Events of traces which aren't sampled within the window since their last event are
+ * discarded. Events without trace ID, and events between sampling and trigger levels, always pass through.
+ * <p>
+ * Traces are spread over stripes by trace ID hash, each with its own lock and share of the capacity, so logging
+ * threads contend only when their traces fall into the same stripe, and events which aren't held take no lock at all.
+ * When a stripe is full, its least recently active traces are evicted; a trace exceeding its own capacity loses its
+ * oldest events.
+ */
+final class TailSampler {
+    private static final int MAX_STRIPES = 64;
+
+    private final String traceKey;
+    private final String sampledKey;
+    private final Level level;
+    private final Level triggerLevel;
+    private final long window;
+    private final int traceCapacity;
+    private final int stripeCapacity;
+    private final boolean includeCallerData;
+    private final IntConsumer discarded;
+    private final Stripe[] stripes;
+
+    /**
+     * @param traceKey MDC key of trace ID
+     * @param sampledKey MDC key marking trace as sampled with {@code "true"} or {@code "1"} value, may be {@code null}
+     * @param level events below the level are held
+     * @param triggerLevel events of the level or higher make their trace sampled
+     * @param window time since the last event of a trace after which its held events are discarded, in ms
+     * @param capacity maximum number of held events and tracked traces
+     * @param traceCapacity maximum number of held events per trace
+     * @param includeCallerData whether caller data of held events should be captured on the logging thread
+     * @param discarded receiver of the number of discarded events
+     */
+    TailSampler(String traceKey, String sampledKey, Level level, Level triggerLevel, long window, int capacity,
+                int traceCapacity, boolean includeCallerData, IntConsumer discarded) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(Math.min(
+                Runtime.getRuntime().availableProcessors() * 4, MAX_STRIPES), capacity)));
+
+        this.traceKey = traceKey;
+        this.sampledKey = sampledKey;
+        this.level = level;
+        this.triggerLevel = triggerLevel;
+        this.window = window;
+        this.traceCapacity = traceCapacity;
+        this.stripeCapacity = Math.max(1, capacity / count);
+        this.includeCallerData = includeCallerData;
+        this.discarded = discarded;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Checks whether event should be held, releasing held events of its trace if the event samples it.
+     * @param event logging event
+     * @param released receiver of released events, called before this method returns {@code false}
+     * @return {@code true} if event was held; {@code false} if it should be logged
+     */
+    boolean hold(ILoggingEvent event, Consumer<ILoggingEvent> released) {
+        boolean triggered = event.getLevel().isGreaterOrEqual(triggerLevel);
+        if (!triggered && event.getLevel().isGreaterOrEqual(level)) {
+            return false;
+        }
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        String traceId = mdc.get(traceKey);
+        if (traceId == null) {
+            return false;
+        }
+        triggered |= sampledKey != null && isSampled(mdc.get(sampledKey));
+
+        if (!triggered) {
+            // held event must not depend on logging thread state any more; done before taking the lock
+            event.prepareForDeferredProcessing();
+            if (includeCallerData) {
+                event.getCallerData();
+            }
+        }
+
+        int hash = traceId.hashCode();
+        Stripe stripe = stripes[(hash ^ hash >>> 16) & (stripes.length - 1)];
+        ILoggingEvent[] releasedEvents = null;
+        int evicted = 0;
+        synchronized (stripe) {
+            Trace trace = stripe.traces.get(traceId);
+            if (trace == null) {
+                while (stripe.traces.size() >= stripeCapacity) {
+                    evicted += stripe.evictEldest(null);
+                }
+                trace = new Trace();
+                stripe.traces.put(traceId, trace);
+            }
+            trace.lastSeen = event.getTimeStamp();
+
+            if (trace.sampled) {
+                return false;
+            }
+
+            if (triggered) {
+                trace.sampled = true;
+                if (trace.events != null) {
+                    releasedEvents = trace.events.toArray(new ILoggingEvent[0]);
+                    stripe.events -= releasedEvents.length;
+                    trace.events = null;
+                }
+            } else {
+                if (trace.events == null) {
+                    trace.events = new ArrayDeque<>();
+                } else if (trace.events.size() >= traceCapacity) {
+                    trace.events.poll();
+                    stripe.events--;
+                    evicted++;
+                }
+                while (stripe.events >= stripeCapacity) {
+                    evicted += stripe.evictEldest(trace);
+                }
+                trace.events.add(event);
+                stripe.events++;
+            }
+        }
+
+        if (evicted > 0) {
+            discarded.accept(evicted);
+        }
+        if (releasedEvents != null) {
+            for (ILoggingEvent releasedEvent : releasedEvents) {
+                released.accept(releasedEvent);
+            }
+        }
+        return !triggered;
+    }
+
+    /**
+     * Discards traces without events within the window.
+     * @param now current time, in ms
+     */
+    void sweep(long now) {
+        for (Stripe stripe : stripes) {
+            int evicted = 0;
+            synchronized (stripe) {
+                // traces are in order of their last event
+                Iterator<Trace> iterator = stripe.traces.values().iterator();
+                while (iterator.hasNext()) {
+                    Trace trace = iterator.next();
+                    if (now - trace.lastSeen < window) {
+                        break;
+                    }
+                    evicted += stripe.remove(iterator, trace);
+                }
+            }
+            if (evicted > 0) {
+                discarded.accept(evicted);
+            }
+        }
+    }
+
+    /**
+     * Discards all held events, e.g. on appender stop.
+     */
+    void clear() {
+        for (Stripe stripe : stripes) {
+            int evicted;
+            synchronized (stripe) {
+                evicted = stripe.events;
+                stripe.traces.clear();
+                stripe.events = 0;
+            }
+            if (evicted > 0) {
+                discarded.accept(evicted);
+            }
+        }
+    }
+
+    private static boolean isSampled(String value) {
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
+    }
+
+    /**
+     * Traces of a part of trace ID hash space, in access order, guarded by the stripe monitor.
+     */
+    private static final class Stripe {
+        private final LinkedHashMap<String, Trace> traces = new LinkedHashMap<>(16, 0.75f, true);
+        private int events;
+
+        /**
+         * Evicts the least recently active trace, or the oldest event of the current one if it's the only trace.
+         * @return number of discarded events
+         */
+        int evictEldest(Trace current) {
+            Iterator<Trace> iterator = traces.values().iterator();
+            Trace eldest = iterator.next();
+            if (eldest == current) {
+                current.events.poll();
+                events--;
+                return 1;
+            }
+            return remove(iterator, eldest);
+        }
+
+        int remove(Iterator<Trace> iterator, Trace trace) {
+            iterator.remove();
+            int count = trace.events == null ? 0 : trace.events.size();
+            events -= count;
+            return count;
+        }
+    }
+
+    private static final class Trace {
+        private ArrayDeque<ILoggingEvent> events;
+        private boolean sampled;
+        private long lastSeen;
+    }
+}
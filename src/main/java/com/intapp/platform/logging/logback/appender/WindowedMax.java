@@ -0,0 +1,64 @@
+package com.intapp.platform.logging.logback.appender;
+
+import java.util.Arrays;
+
+/**
+ * Maximum of values recorded within a sliding time window, so that a past peak stops being reported once the window
+ * moves past it.
+ * <p>
+ * The window is divided into intervals; each value is recorded into the maximum of every interval, and the oldest one
+ * is reported. Every interval the reported maximum is reset and the next oldest one is reported, so it covers between
+ * {@code window - window / intervals} and {@code window} of history.
+ */
+class WindowedMax {
+    private final long[] maxima;
+    private final long rotateInterval;
+
+    private long rotateTime;
+    private int current;
+
+    /**
+     * @param window time (in ms) values are reported for
+     * @param intervals number of intervals the window moves by
+     * @param now current time (in ms)
+     */
+    WindowedMax(long window, int intervals, long now) {
+        this.maxima = new long[intervals];
+        this.rotateInterval = Math.max(1, window / intervals);
+        this.rotateTime = now;
+    }
+
+    synchronized void record(long value, long now) {
+        rotate(now);
+        for (int i = 0; i < maxima.length; i++) {
+            maxima[i] = Math.max(maxima[i], value);
+        }
+    }
+
+    /**
+     * @return maximum of values recorded within the window, or 0 if there were none
+     */
+    synchronized long get(long now) {
+        rotate(now);
+        return maxima[current];
+    }
+
+    private void rotate(long now) {
+        long elapsed = now - rotateTime;
+        if (elapsed < rotateInterval) {
+            return;
+        }
+
+        if (elapsed >= rotateInterval * maxima.length) {
+            // whole window has passed, so nothing recorded before is reported
+            Arrays.fill(maxima, 0);
+            current = 0;
+            rotateTime = now - elapsed % rotateInterval;
+            return;
+        }
+        for (; now - rotateTime >= rotateInterval; rotateTime += rotateInterval) {
+            maxima[current] = 0;
+            current = (current + 1) % maxima.length;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.intapp.platform.logging.logback.emf;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter summed over each aggregation interval. Concurrent increments update separate cells, so they don't contend.
+ * Counter is published every interval, even if it wasn't incremented.
+ */
+public final class Counter extends Metric {
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, StandardUnit unit) {
+        super(name, unit);
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void increment(long amount) {
+        count.add(amount);
+    }
+
+    @Override
+    boolean writeValue(StringBuilder buffer) {
+        buffer.append(count.sumThenReset());
+        return true;
+    }
+}
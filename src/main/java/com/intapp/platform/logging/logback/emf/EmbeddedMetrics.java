@@ -0,0 +1,241 @@
+package com.intapp.platform.logging.logback.emf;
+
+import ch.qos.logback.core.spi.ContextAwareBase;
+import ch.qos.logback.core.spi.LifeCycle;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.util.StringUtils;
+import com.intapp.platform.logging.logback.appender.AmazonCloudWatchAppender;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+
+/**
+ * Custom metrics aggregated in process and published through CloudWatch appender as
+ * <a href="https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format_Specification.html">
+ * embedded metric format</a> log events, from which CloudWatch Logs extracts metrics.
+ * <p>
+ * Recording a value only updates lock-free accumulators. At the end of each interval all metrics are written into a
+ * single log event (per 100 metrics), which goes through appender batching with other events, so custom metrics cost
+ * a log line per interval instead of a {@code PutMetricData} request per data point.
+ * <pre>
+ * EmbeddedMetrics metrics = new EmbeddedMetrics(appender);
+ * metrics.setNamespace("Orders");
+ * metrics.addDimension("Service", "checkout");
+ * metrics.start();
+ * metrics.histogram("Latency", StandardUnit.Milliseconds).record(elapsed);
+ * </pre>
+ */
+public class EmbeddedMetrics extends ContextAwareBase implements LifeCycle {
+    private static final long DEFAULT_FLUSH_INTERVAL = 60000;
+    private static final int MAX_METRICS_PER_EVENT = 100;
+    private static final int MAX_VALUES_LENGTH = 128 * 1024;
+
+    private final AmazonCloudWatchAppender appender;
+    private final Map<String, String> dimensions = new LinkedHashMap<>();
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * CloudWatch namespace of the metrics.
+     */
+    @Setter
+    private String namespace;
+
+    /**
+     * Aggregation interval (in ms). Each interval is published as separate data points, so it should be a multiple
+     * of the metric resolution, which is one minute for most metrics.
+     */
+    @Setter
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param appender appender publishing metric events to its own log group and stream
+     */
+    public EmbeddedMetrics(AmazonCloudWatchAppender appender) {
+        this.appender = appender;
+        setContext(appender.getContext());
+    }
+
+    /**
+     * Adds dimension to all metrics, e.g. service name or environment. Should be called before starting.
+     */
+    public void addDimension(String name, String value) {
+        dimensions.put(name, value);
+    }
+
+    /**
+     * @return counter of events with {@link StandardUnit#Count} unit
+     */
+    public Counter counter(String name) {
+        return counter(name, StandardUnit.Count);
+    }
+
+    /**
+     * @return counter registered with the name, creating it if necessary
+     */
+    public Counter counter(String name, StandardUnit unit) {
+        return register(name, Counter.class, key -> new Counter(key, unit));
+    }
+
+    /**
+     * @return gauge registered with the name, creating it if necessary; its value is set explicitly
+     */
+    public Gauge gauge(String name, StandardUnit unit) {
+        return register(name, Gauge.class, key -> new Gauge(key, unit, null));
+    }
+
+    /**
+     * @return gauge registered with the name, creating it with the supplier sampled at the end of each interval
+     */
+    public Gauge gauge(String name, StandardUnit unit, DoubleSupplier supplier) {
+        return register(name, Gauge.class, key -> new Gauge(key, unit, supplier));
+    }
+
+    /**
+     * @return histogram registered with the name, creating it if necessary
+     */
+    public Histogram histogram(String name, StandardUnit unit) {
+        return register(name, Histogram.class, key -> new Histogram(key, unit));
+    }
+
+    private <T extends Metric> T register(String name, Class<T> type, Function<String, T> factory) {
+        Metric metric = metrics.computeIfAbsent(name, factory);
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(format("Metric %s is already registered as %s", name,
+                    metric.getClass().getSimpleName()));
+        }
+        return type.cast(metric);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (isStarted()) {
+            return;
+        }
+
+        if (StringUtils.isNullOrEmpty(namespace)) {
+            addWarn("CloudWatch namespace of embedded metrics is not set, metrics won't be published");
+            return;
+        }
+
+        if (flushInterval <= 0) {
+            addWarn(format("Invalid embedded metrics interval %d ms, falling back to %d ms", flushInterval,
+                    DEFAULT_FLUSH_INTERVAL));
+            flushInterval = DEFAULT_FLUSH_INTERVAL;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, format("%s-metrics", appender.getName()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops periodic publishing, publishing values of the current interval.
+     */
+    @Override
+    public synchronized void stop() {
+        if (isStarted()) {
+            scheduler.shutdown();
+            scheduler = null;
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized boolean isStarted() {
+        return scheduler != null;
+    }
+
+    /**
+     * Publishes values aggregated since the previous flush and starts a new interval.
+     */
+    public synchronized void flush() {
+        try {
+            long timestamp = System.currentTimeMillis();
+            StringBuilder definitions = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            int count = 0;
+            for (Metric metric : metrics.values()) {
+                int mark = values.length();
+                values.append(',');
+                appendString(values, metric.getName());
+                values.append(':');
+                if (!metric.writeValue(values)) {
+                    values.setLength(mark);
+                    continue;
+                }
+
+                definitions.append(count > 0 ? ",{\"Name\":" : "{\"Name\":");
+                appendString(definitions, metric.getName());
+                definitions.append(",\"Unit\":\"").append(metric.getUnit()).append("\"}");
+                if (++count == MAX_METRICS_PER_EVENT || values.length() >= MAX_VALUES_LENGTH) {
+                    publish(timestamp, definitions, values);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                publish(timestamp, definitions, values);
+            }
+        } catch (RuntimeException ex) {
+            // exception would cancel further scheduled flushes
+            addError("Failed to publish embedded metrics", ex);
+        }
+    }
+
+    /**
+     * Appends event with the given metric definitions and values, clearing them.
+     */
+    private void publish(long timestamp, StringBuilder definitions, StringBuilder values) {
+        StringBuilder event = new StringBuilder(definitions.length() + values.length() + 256);
+        event.append("{\"_aws\":{\"Timestamp\":").append(timestamp).append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        appendString(event, namespace);
+        event.append(",\"Dimensions\":[[");
+        String separator = "";
+        for (String name : dimensions.keySet()) {
+            event.append(separator);
+            appendString(event, name);
+            separator = ",";
+        }
+        event.append("]],\"Metrics\":[").append(definitions).append("]}]}");
+        for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+            event.append(',');
+            appendString(event, dimension.getKey());
+            event.append(':');
+            appendString(event, dimension.getValue());
+        }
+        event.append(values).append('}');
+
+        appender.appendMessage(timestamp, event.toString());
+        definitions.setLength(0);
+        values.setLength(0);
+    }
+
+    private static void appendString(StringBuilder buffer, String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.append('\\').append(c);
+            } else if (c < ' ') {
+                buffer.append(format("\\u%04x", (int) c));
+            } else {
+                buffer.append(c);
+            }
+        }
+        buffer.append('"');
+    }
+}
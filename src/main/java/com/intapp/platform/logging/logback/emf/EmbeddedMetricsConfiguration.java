@@ -0,0 +1,36 @@
+package com.intapp.platform.logging.logback.emf;
+
+import com.intapp.platform.logging.CloudWatchProperties;
+import com.intapp.platform.logging.logback.CloudWatchLogbackConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.DependsOn;
+
+import java.util.Optional;
+
+/**
+ * Registers embedded metrics published through CloudWatch appender when their namespace is configured.
+ * <p>
+ * <b>NOTE:</b> imported by {@link CloudWatchLogbackConfiguration} and, like it, isn't declared as
+ * {@link org.springframework.context.annotation.Configuration} to be skipped by {@code ComponentScan}
+ */
+@ConditionalOnProperty(prefix = "logging.cloudwatch", name = "metrics-namespace")
+public class EmbeddedMetricsConfiguration {
+
+    // appender is stopped after metrics, so that the last interval is still published
+    @Bean(destroyMethod = "stop")
+    @DependsOn("cloudWatchAppender")
+    public EmbeddedMetrics embeddedMetrics(CloudWatchLogbackConfiguration configuration,
+                                           CloudWatchProperties properties) {
+        EmbeddedMetrics metrics = new EmbeddedMetrics(configuration.getAppender());
+
+        metrics.setNamespace(properties.getMetricsNamespace());
+        Optional.ofNullable(properties.getMetricsInterval()).ifPresent(metrics::setFlushInterval);
+        Optional.ofNullable(properties.getMetricsDimensions())
+                .ifPresent(dimensions -> dimensions.forEach(metrics::addDimension));
+
+        metrics.start();
+
+        return metrics;
+    }
+}
@@ -0,0 +1,34 @@
+package com.intapp.platform.logging.logback.emf;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Gauge publishing its latest value, either set explicitly or sampled from a supplier at the end of each interval.
+ * Gauge without a value, e.g. never set, isn't published.
+ */
+public final class Gauge extends Metric {
+    private final DoubleSupplier supplier;
+    private final AtomicLong value = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+
+    Gauge(String name, StandardUnit unit, DoubleSupplier supplier) {
+        super(name, unit);
+        this.supplier = supplier;
+    }
+
+    public void set(double value) {
+        this.value.set(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    boolean writeValue(StringBuilder buffer) {
+        double current = supplier != null ? supplier.getAsDouble() : Double.longBitsToDouble(value.get());
+        if (Double.isNaN(current) || Double.isInfinite(current)) {
+            return false;
+        }
+        buffer.append(current);
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+package com.intapp.platform.logging.logback.emf;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of recorded values over each aggregation interval, published as values with counts, so that
+ * CloudWatch computes percentiles, average, minimum and maximum from it.
+ * <p>
+ * Values are counted in fixed buckets, two per power of two from 2<sup>-10</sup> to 2<sup>39</sup>, plus one bucket
+ * for zero and negative values. Each bucket is published as its geometric middle, so published values are within
+ * 19% of the recorded ones, and values beyond the range fall into the outermost buckets. Fixed buckets keep
+ * recording to a single array increment, and with 99 buckets the histogram fits within 100 values per metric
+ * allowed by embedded metric format. Counts are striped by thread, so concurrent recording rarely contends.
+ */
+public final class Histogram extends Metric {
+    private static final int MIN_EXPONENT = -10;
+    private static final int MAX_EXPONENT = 39;
+    static final int BUCKET_COUNT = 2 * (MAX_EXPONENT - MIN_EXPONENT) + 1;
+
+    private static final double SQRT_2 = Math.sqrt(2);
+    private static final double FOURTH_ROOT_2 = Math.sqrt(SQRT_2);
+    private static final int MAX_STRIPES = 8;
+    private static final int STRIPES = Integer.highestOneBit(
+            Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES) * 2 - 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKET_COUNT);
+    private final long[] snapshot = new long[BUCKET_COUNT];
+
+    Histogram(String name, StandardUnit unit) {
+        super(name, unit);
+    }
+
+    public void record(double value) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKET_COUNT + getBucket(value));
+    }
+
+    @Override
+    boolean writeValue(StringBuilder buffer) {
+        boolean empty = true;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            long count = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                count += counts.getAndSet(stripe * BUCKET_COUNT + bucket, 0);
+            }
+            snapshot[bucket] = count;
+            empty &= count == 0;
+        }
+        if (empty) {
+            return false;
+        }
+
+        buffer.append("{\"Values\":[");
+        String separator = "";
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            if (snapshot[bucket] > 0) {
+                buffer.append(separator).append(getValue(bucket));
+                separator = ",";
+            }
+        }
+        buffer.append("],\"Counts\":[");
+        separator = "";
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            if (snapshot[bucket] > 0) {
+                buffer.append(separator).append(snapshot[bucket]);
+                separator = ",";
+            }
+        }
+        buffer.append("]}");
+        return true;
+    }
+
+    /**
+     * @return bucket of the value; exponent and mantissa are compared directly, without computing logarithm
+     */
+    static int getBucket(double value) {
+        if (!(value > 0)) {
+            return 0;
+        }
+
+        int exponent = Math.getExponent(value);
+        if (exponent < MIN_EXPONENT) {
+            return 1;
+        }
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int half = value < Math.scalb(SQRT_2, exponent) ? 0 : 1;
+        return 1 + 2 * (exponent - MIN_EXPONENT) + half;
+    }
+
+    /**
+     * @return value published for the bucket
+     */
+    static double getValue(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+
+        int exponent = MIN_EXPONENT + (bucket - 1) / 2;
+        double lowerBound = Math.scalb((bucket - 1) % 2 == 0 ? 1 : SQRT_2, exponent);
+        return lowerBound * FOURTH_ROOT_2;
+    }
+}
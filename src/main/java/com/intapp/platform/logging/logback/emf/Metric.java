@@ -0,0 +1,32 @@
+package com.intapp.platform.logging.logback.emf;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+/**
+ * Metric aggregated in process and published as a value of embedded metric format event.
+ */
+abstract class Metric {
+    private final String name;
+    private final StandardUnit unit;
+
+    Metric(String name, StandardUnit unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    StandardUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * Appends JSON value aggregated since the previous call and starts a new aggregation interval.
+     * Called by a single thread at a time.
+     * @param buffer buffer of the event being written
+     * @return {@code false} if metric has no value for the interval and nothing was appended
+     */
+    abstract boolean writeValue(StringBuilder buffer);
+}
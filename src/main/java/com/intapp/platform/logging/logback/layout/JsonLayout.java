@@ -0,0 +1,304 @@
+package com.intapp.platform.logging.logback.layout;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import ch.qos.logback.core.LayoutBase;
+import lombok.Setter;
+
+import java.util.Map;
+
+/**
+ * Logback layout formatting events as single-line JSON objects, suitable for CloudWatch Logs Insights queries:
+ * <pre>
+ * {"timestamp":1500000000000,"level":"INFO","logger":"com.example.Service","thread":"main","message":"Started",
+ *  "mdc":{"requestId":"42"},"arguments":{"userId":7},"exception":{"class":"...","message":"...","stackTrace":[...]}}
+ * </pre>
+ * Arguments which are {@link Map.Entry} instances are written as key/value fields of {@code arguments} object.
+ * <p>
+ * Layout writes directly into a reused per-thread buffer, escaping values in place, so the only allocation per event
+ * is the resulting string (plus formatted message, which is cached by the event itself).
+ */
+public class JsonLayout extends LayoutBase<ILoggingEvent> {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int DEFAULT_STACK_TRACE_CACHE_SIZE = 64;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_BUFFER_SIZE));
+
+    /**
+     * Whether to write MDC properties.
+     */
+    @Setter
+    private boolean includeMdc = true;
+
+    /**
+     * Whether to write key/value arguments.
+     */
+    @Setter
+    private boolean includeArguments = true;
+
+    /**
+     * Whether to write stack traces of exceptions.
+     */
+    @Setter
+    private boolean includeStackTrace = true;
+
+    /**
+     * Whether to write stack trace which is already cached as {@code "stackTraceRef"} field instead, referring to
+     * {@code "stackTraceId"} field of the earlier event with the same stack trace written in full.
+     */
+    @Setter
+    private boolean stackTraceReferences;
+
+    private StackTraceCache stackTraceCache = new StackTraceCache(DEFAULT_STACK_TRACE_CACHE_SIZE);
+
+    /**
+     * Sets number of formatted stack traces cached for recurring exceptions, {@code 0} disables caching.
+     */
+    public void setStackTraceCacheSize(int size) {
+        stackTraceCache = size > 0 ? new StackTraceCache(size) : null;
+    }
+
+    @Override
+    public String doLayout(ILoggingEvent event) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+
+        buffer.append("{\"timestamp\":").append(event.getTimeStamp());
+        buffer.append(",\"level\":\"").append(event.getLevel().levelStr).append('"');
+        appendField(buffer, "logger", event.getLoggerName());
+        appendField(buffer, "thread", event.getThreadName());
+        appendField(buffer, "message", event.getFormattedMessage());
+
+        if (includeMdc) {
+            appendMdc(buffer, event.getMDCPropertyMap());
+        }
+        if (includeArguments) {
+            appendArguments(buffer, event.getArgumentArray());
+        }
+        if (event.getThrowableProxy() != null) {
+            buffer.append(",\"exception\":");
+            appendThrowable(buffer, event.getThrowableProxy());
+        }
+        buffer.append('}');
+
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            // don't keep buffer grown by a huge event forever
+            BUFFER.set(new StringBuilder(INITIAL_BUFFER_SIZE));
+        }
+        return result;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+
+    private static void appendField(StringBuilder buffer, String name, CharSequence value) {
+        buffer.append(",\"").append(name).append("\":");
+        appendString(buffer, value);
+    }
+
+    private static void appendMdc(StringBuilder buffer, Map<String, String> mdc) {
+        if (mdc == null || mdc.isEmpty()) {
+            return;
+        }
+
+        buffer.append(",\"mdc\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+            if (!first) {
+                buffer.append(',');
+            }
+            appendString(buffer, entry.getKey());
+            buffer.append(':');
+            appendString(buffer, entry.getValue());
+            first = false;
+        }
+        buffer.append('}');
+    }
+
+    private static void appendArguments(StringBuilder buffer, Object[] arguments) {
+        if (arguments == null) {
+            return;
+        }
+
+        boolean first = true;
+        for (Object argument : arguments) {
+            if (argument instanceof Map.Entry) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) argument;
+                buffer.append(first ? ",\"arguments\":{" : ",");
+                appendString(buffer, String.valueOf(entry.getKey()));
+                buffer.append(':');
+                appendValue(buffer, entry.getValue());
+                first = false;
+            }
+        }
+        if (!first) {
+            buffer.append('}');
+        }
+    }
+
+    private void appendThrowable(StringBuilder buffer, IThrowableProxy throwable) {
+        buffer.append("{\"class\":");
+        appendString(buffer, throwable.getClassName());
+        if (throwable.getMessage() != null) {
+            appendField(buffer, "message", throwable.getMessage());
+        }
+
+        StackTraceElementProxy[] frames = throwable.getStackTraceElementProxyArray();
+        if (includeStackTrace && frames != null) {
+            appendStackTrace(buffer, frames, frames.length - throwable.getCommonFrames());
+            if (throwable.getCommonFrames() > 0) {
+                buffer.append(",\"commonFrames\":").append(throwable.getCommonFrames());
+            }
+        }
+
+        IThrowableProxy[] suppressed = throwable.getSuppressed();
+        if (suppressed != null && suppressed.length > 0) {
+            buffer.append(",\"suppressed\":[");
+            for (int i = 0; i < suppressed.length; i++) {
+                if (i > 0) {
+                    buffer.append(',');
+                }
+                appendThrowable(buffer, suppressed[i]);
+            }
+            buffer.append(']');
+        }
+
+        if (throwable.getCause() != null) {
+            buffer.append(",\"cause\":");
+            appendThrowable(buffer, throwable.getCause());
+        }
+        buffer.append('}');
+    }
+
+    /**
+     * Appends stack trace field, reusing text formatted for an earlier exception with the same frames, if cached.
+     * Frames are fingerprinted by their hash codes, which is much cheaper than formatting and escaping them.
+     */
+    private void appendStackTrace(StringBuilder buffer, StackTraceElementProxy[] frames, int count) {
+        StackTraceCache cache = stackTraceCache;
+        long fingerprint = 0;
+        if (cache != null) {
+            fingerprint = StackTraceCache.fingerprint(frames, count);
+            String cached = cache.get(fingerprint);
+            if (cached != null) {
+                if (stackTraceReferences) {
+                    buffer.append(",\"stackTraceRef\":\"").append(Long.toHexString(fingerprint)).append('"');
+                } else {
+                    buffer.append(cached);
+                }
+                return;
+            }
+        }
+
+        int start = buffer.length();
+        buffer.append(",\"stackTrace\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            appendFrame(buffer, frames[i].getStackTraceElement());
+        }
+        buffer.append(']');
+
+        if (cache != null) {
+            cache.put(fingerprint, buffer.substring(start));
+            if (stackTraceReferences) {
+                buffer.append(",\"stackTraceId\":\"").append(Long.toHexString(fingerprint)).append('"');
+            }
+        }
+    }
+
+    /**
+     * Appends stack frame as {@code "at Class.method(File.java:42)"}, without creating intermediate strings.
+     */
+    private static void appendFrame(StringBuilder buffer, StackTraceElement frame) {
+        buffer.append("\"at ");
+        appendEscaped(buffer, frame.getClassName());
+        buffer.append('.');
+        appendEscaped(buffer, frame.getMethodName());
+        buffer.append('(');
+        if (frame.isNativeMethod()) {
+            buffer.append("Native Method");
+        } else if (frame.getFileName() == null) {
+            buffer.append("Unknown Source");
+        } else {
+            appendEscaped(buffer, frame.getFileName());
+            if (frame.getLineNumber() >= 0) {
+                buffer.append(':').append(frame.getLineNumber());
+            }
+        }
+        buffer.append(")\"");
+    }
+
+    private static void appendValue(StringBuilder buffer, Object value) {
+        if (value == null) {
+            buffer.append("null");
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            buffer.append(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            buffer.append(((Boolean) value).booleanValue());
+        } else if (value instanceof CharSequence) {
+            appendString(buffer, (CharSequence) value);
+        } else {
+            appendString(buffer, String.valueOf(value));
+        }
+    }
+
+    private static void appendString(StringBuilder buffer, CharSequence value) {
+        if (value == null) {
+            buffer.append("null");
+            return;
+        }
+
+        buffer.append('"');
+        appendEscaped(buffer, value);
+        buffer.append('"');
+    }
+
+    private static void appendEscaped(StringBuilder buffer, CharSequence value) {
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch >= 0x20 && ch != '"' && ch != '\\') {
+                continue;
+            }
+
+            // characters which don't need escaping are copied in bulk
+            buffer.append(value, start, i);
+            start = i + 1;
+            switch (ch) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    buffer.append("\\u00").append(HEX_DIGITS[ch >> 4]).append(HEX_DIGITS[ch & 0xF]);
+                    break;
+            }
+        }
+
+        if (start == 0 && value instanceof String) {
+            buffer.append((String) value);
+        } else {
+            buffer.append(value, start, length);
+        }
+    }
+}
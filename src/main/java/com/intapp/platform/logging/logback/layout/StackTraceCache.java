@@ -0,0 +1,80 @@
+package com.intapp.platform.logging.logback.layout;
+
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of formatted stack traces keyed by fingerprint of their frames.
+ * <p>
+ * Cache is direct-mapped: each fingerprint has a single slot, and a new stack trace replaces whatever occupied its
+ * slot. Lookup and update are a single volatile read or write, memory is bounded by the number of slots, and
+ * recurring exceptions, which are the ones worth caching, keep winning their slots back.
+ */
+final class StackTraceCache {
+    private static final int MAX_CACHED_LENGTH = 128 * 1024;
+
+    private final int mask;
+    private final AtomicReferenceArray<Entry> entries;
+
+    /**
+     * @param capacity minimum number of slots, rounded up to the power of two
+     */
+    StackTraceCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, Math.min(capacity, 1 << 30)));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        entries = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Calculates 64-bit fingerprint of stack frames from their class, method, file and line.
+     * @param frames stack frames
+     * @param count number of frames to use, from the top of the stack
+     * @return fingerprint, equal for the same frames
+     */
+    static long fingerprint(StackTraceElementProxy[] frames, int count) {
+        long hash = count;
+        for (int i = 0; i < count; i++) {
+            hash = (Long.rotateLeft(hash, 23) ^ frames[i].getStackTraceElement().hashCode()) * 0x9E3779B97F4A7C15L;
+        }
+        // final mixing, so that all bits of the fingerprint depend on all frames
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return formatted stack trace with the fingerprint or {@code null} if it isn't cached
+     */
+    String get(long fingerprint) {
+        Entry entry = entries.get(index(fingerprint));
+        return entry != null && entry.fingerprint == fingerprint ? entry.text : null;
+    }
+
+    /**
+     * Caches formatted stack trace, unless it's too large to be worth keeping.
+     */
+    void put(long fingerprint, String text) {
+        if (text.length() <= MAX_CACHED_LENGTH) {
+            entries.lazySet(index(fingerprint), new Entry(fingerprint, text));
+        }
+    }
+
+    private int index(long fingerprint) {
+        return (int) (fingerprint ^ fingerprint >>> 32) & mask;
+    }
+
+    private static final class Entry {
+        private final long fingerprint;
+        private final String text;
+
+        Entry(long fingerprint, String text) {
+            this.fingerprint = fingerprint;
+            this.text = text;
+        }
+    }
+}
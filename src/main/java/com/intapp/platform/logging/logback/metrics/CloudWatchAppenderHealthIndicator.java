@@ -0,0 +1,41 @@
+package com.intapp.platform.logging.logback.metrics;
+
+import com.intapp.platform.logging.logback.appender.AmazonCloudWatchAppender;
+import com.intapp.platform.logging.logback.appender.AppenderMetrics;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+/**
+ * Health of CloudWatch appender.
+ * <p>
+ * Appender is down when it failed to start. Sending to CloudWatch suspended after repeated failures is reported as
+ * a detail only: events are buffered meanwhile and the application itself is not affected, so it shouldn't be taken
+ * out of service, e.g. by a load balancer, during a CloudWatch outage.
+ */
+public class CloudWatchAppenderHealthIndicator extends AbstractHealthIndicator {
+    private final AmazonCloudWatchAppender appender;
+
+    public CloudWatchAppenderHealthIndicator(AmazonCloudWatchAppender appender) {
+        this.appender = appender;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        AppenderMetrics metrics = appender.getMetrics();
+
+        if (!appender.isStarted()) {
+            builder.down();
+        } else {
+            builder.up();
+        }
+
+        builder.withDetail("started", appender.isStarted())
+                .withDetail("sendingSuspended", appender.isSendingSuspended())
+                .withDetail("queued", appender.getQueuedCount())
+                .withDetail("dropped", metrics.getDroppedEvents())
+                .withDetail("rejected", metrics.getRejectedEvents())
+                .withDetail("spilled", metrics.getSpilledEvents())
+                .withDetail("sent", metrics.getSentEvents())
+                .withDetail("failedRequests", metrics.getFailedRequests());
+    }
+}
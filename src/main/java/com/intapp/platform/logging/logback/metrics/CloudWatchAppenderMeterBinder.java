@@ -0,0 +1,98 @@
+package com.intapp.platform.logging.logback.metrics;
+
+import com.intapp.platform.logging.logback.appender.AmazonCloudWatchAppender;
+import com.intapp.platform.logging.logback.appender.AppenderMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Exposes statistics of CloudWatch appender as Micrometer meters.
+ * <p>
+ * Meters read appender counters when registry is polled, so the appender doesn't depend on Micrometer.
+ */
+public class CloudWatchAppenderMeterBinder implements MeterBinder {
+    private static final String PREFIX = "cloudwatch.appender.";
+
+    private final AmazonCloudWatchAppender appender;
+    private final List<Tag> tags;
+
+    public CloudWatchAppenderMeterBinder(AmazonCloudWatchAppender appender) {
+        this.appender = appender;
+        this.tags = Collections.singletonList(Tag.of("appender", appender.getName()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        AppenderMetrics metrics = appender.getMetrics();
+
+        Gauge.builder(PREFIX + "queue.size", appender, AmazonCloudWatchAppender::getQueuedCount)
+                .tags(tags)
+                .description("Number of events waiting in internal queues")
+                .register(registry);
+        Gauge.builder(PREFIX + "queue.bytes", appender, AmazonCloudWatchAppender::getQueuedBytes)
+                .tags(tags)
+                .baseUnit("bytes")
+                .description("Size of direct memory taken by events waiting in internal queues")
+                .register(registry);
+
+        counter(registry, "events.appended", metrics, AppenderMetrics::getAppendedEvents,
+                "Number of events accepted by the appender");
+        counter(registry, "events.dropped", metrics, AppenderMetrics::getDroppedEvents,
+                "Number of events discarded because of full buffers or failed requests");
+        counter(registry, "events.rejected", metrics, AppenderMetrics::getRejectedEvents,
+                "Number of events rejected by FAIL_FAST overflow policy, also counted as dropped");
+        counter(registry, "events.spilled", metrics, AppenderMetrics::getSpilledEvents,
+                "Number of events written to disk spill buffer");
+        counter(registry, "events.sent", metrics, AppenderMetrics::getSentEvents,
+                "Number of events accepted by CloudWatch");
+        counter(registry, "events.unsampled", metrics, AppenderMetrics::getUnsampledEvents,
+                "Number of events held for tail sampling and discarded because their trace wasn't sampled");
+
+        counter(registry, "batches", metrics, AppenderMetrics::getBatches, "Number of assembled batches");
+        counter(registry, "batch.events", metrics, AppenderMetrics::getBatchEvents,
+                "Total number of events in assembled batches");
+        FunctionCounter.builder(PREFIX + "batch.bytes", metrics, AppenderMetrics::getBatchBytes)
+                .tags(tags)
+                .baseUnit("bytes")
+                .description("Total size of assembled batches")
+                .register(registry);
+        Gauge.builder(PREFIX + "batch.bytes.max", metrics, AppenderMetrics::getMaxBatchBytes)
+                .tags(tags)
+                .baseUnit("bytes")
+                .description("Size of the largest batch assembled within the last 2 minutes")
+                .register(registry);
+
+        FunctionTimer.builder(PREFIX + "requests", metrics, AppenderMetrics::getRequests,
+                AppenderMetrics::getRequestTime, TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("PutLogEvents request attempts")
+                .register(registry);
+        TimeGauge.builder(PREFIX + "requests.max", metrics, TimeUnit.NANOSECONDS, AppenderMetrics::getMaxRequestTime)
+                .tags(tags)
+                .description("Duration of the longest PutLogEvents request attempt within the last 2 minutes")
+                .register(registry);
+        counter(registry, "requests.failed", metrics, AppenderMetrics::getFailedRequests,
+                "Number of requests which failed after all retries");
+        counter(registry, "requests.retries", metrics, AppenderMetrics::getRetries, "Number of request retries");
+        counter(registry, "requests.throttled", metrics, AppenderMetrics::getThrottles,
+                "Number of requests throttled by CloudWatch");
+    }
+
+    private void counter(MeterRegistry registry, String name, AppenderMetrics metrics,
+                         ToDoubleFunction<AppenderMetrics> value, String description) {
+        FunctionCounter.builder(PREFIX + name, metrics, value)
+                .tags(tags)
+                .description(description)
+                .register(registry);
+    }
+}
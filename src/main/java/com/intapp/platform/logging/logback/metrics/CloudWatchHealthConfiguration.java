@@ -0,0 +1,21 @@
+package com.intapp.platform.logging.logback.metrics;
+
+import com.intapp.platform.logging.logback.CloudWatchLogbackConfiguration;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Registers CloudWatch appender health indicator when Spring Boot Actuator is on the classpath.
+ * <p>
+ * <b>NOTE:</b> imported by {@link CloudWatchLogbackConfiguration} and, like it, isn't declared as
+ * {@link org.springframework.context.annotation.Configuration} to be skipped by {@code ComponentScan}
+ */
+@ConditionalOnClass(name = "org.springframework.boot.actuate.health.HealthIndicator")
+public class CloudWatchHealthConfiguration {
+
+    @Bean
+    public HealthIndicator cloudWatchHealthIndicator(CloudWatchLogbackConfiguration configuration) {
+        return new CloudWatchAppenderHealthIndicator(configuration.getAppender());
+    }
+}
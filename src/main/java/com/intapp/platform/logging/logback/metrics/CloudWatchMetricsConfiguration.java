@@ -0,0 +1,21 @@
+package com.intapp.platform.logging.logback.metrics;
+
+import com.intapp.platform.logging.logback.CloudWatchLogbackConfiguration;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Registers CloudWatch appender meters when Micrometer is on the classpath.
+ * <p>
+ * <b>NOTE:</b> imported by {@link CloudWatchLogbackConfiguration} and, like it, isn't declared as
+ * {@link org.springframework.context.annotation.Configuration} to be skipped by {@code ComponentScan}
+ */
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+public class CloudWatchMetricsConfiguration {
+
+    @Bean
+    public MeterBinder cloudWatchAppenderMeterBinder(CloudWatchLogbackConfiguration configuration) {
+        return new CloudWatchAppenderMeterBinder(configuration.getAppender());
+    }
+}
@@ -0,0 +1,252 @@
+package com.intapp.platform.logging.logback.sink;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.logs.AWSLogs;
+import com.amazonaws.services.logs.AWSLogsAsync;
+import com.amazonaws.services.logs.model.*;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends events to CloudWatch Logs with {@code PutLogEvents} requests, creating log groups and streams as needed.
+ * <p>
+ * Each channel tracks the sequence token of its log stream and sends its requests one at a time, as each of them needs
+ * the token returned by the previous one. A request rejected for a stale token, e.g. after another writer to the stream
+ * sent its own, is resent with the expected one; a request which turns out to be already accepted, e.g. when
+ * the response to the previous attempt was lost, counts as sent.
+ */
+public class CloudWatchLogsSink implements LogSink {
+
+    /**
+     * Maximum size of a single {@code PutLogEvents} request, in bytes.
+     */
+    public static final int MAX_BATCH_BYTES = 1_048_576;
+
+    /**
+     * Number of bytes CloudWatch Logs adds to each event when calculating request size.
+     */
+    public static final int EVENT_OVERHEAD_BYTES = 26;
+
+    /**
+     * Maximum number of events in a single {@code PutLogEvents} request.
+     */
+    public static final int MAX_BATCH_COUNT = 10_000;
+
+    /**
+     * Maximum time span between the earliest and the latest event of a single request.
+     */
+    public static final long MAX_BATCH_TIME_SPAN = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * Maximum size of a single event message, in bytes.
+     */
+    public static final int MAX_EVENT_BYTES = 262_144 - EVENT_OVERHEAD_BYTES;
+
+    public static final SinkLimits LIMITS = new SinkLimits(MAX_BATCH_COUNT, MAX_BATCH_BYTES, MAX_EVENT_BYTES,
+            EVENT_OVERHEAD_BYTES, MAX_BATCH_TIME_SPAN);
+
+    /**
+     * Maximum number of times an asynchronous request is resent with the expected sequence token, in case other writers
+     * to the stream keep taking it first.
+     */
+    private static final int MAX_TOKEN_RETRIES = 5;
+
+    private final AWSLogs client;
+    private final boolean ownsClient;
+    private final Set<String> provisionedLogGroups = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param client CloudWatch Logs client; asynchronous one ({@link AWSLogsAsync}) allows several requests in flight
+     * @param ownsClient {@code true} if the client was created for the sink and is shut down with it; client shared
+     *                   with the application is left to it
+     */
+    public CloudWatchLogsSink(AWSLogs client, boolean ownsClient) {
+        this.client = client;
+        this.ownsClient = ownsClient;
+    }
+
+    /**
+     * Creates sink with the client of the application, which isn't shut down with the sink.
+     */
+    public CloudWatchLogsSink(AWSLogs client) {
+        this(client, false);
+    }
+
+    @Override
+    public SinkLimits getLimits() {
+        return LIMITS;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return client instanceof AWSLogsAsync;
+    }
+
+    /**
+     * Creates log group (once per sink) and log stream, unless they already exist.
+     */
+    @Override
+    public Channel open(String logGroup, String logStream) {
+        if (!provisionedLogGroups.contains(logGroup)) {
+            try {
+                client.createLogGroup(new CreateLogGroupRequest().withLogGroupName(logGroup));
+            } catch (ResourceAlreadyExistsException ex) {
+                // created by another instance or beforehand
+            }
+            provisionedLogGroups.add(logGroup);
+        }
+        try {
+            client.createLogStream(new CreateLogStreamRequest().withLogGroupName(logGroup).withLogStreamName(logStream));
+        } catch (ResourceAlreadyExistsException ex) {
+            // stream of the previous run is continued
+        }
+        return client instanceof AWSLogsAsync ? new AsyncLogStream(logGroup, logStream)
+                : new LogStream(logGroup, logStream);
+    }
+
+    @Override
+    public void shutdown() {
+        if (ownsClient) {
+            client.shutdown();
+        }
+    }
+
+    private class LogStream implements Channel {
+        final String logGroup;
+        final String logStream;
+
+        volatile String token;
+
+        LogStream(String logGroup, String logStream) {
+            this.logGroup = logGroup;
+            this.logStream = logStream;
+        }
+
+        @Override
+        public void send(List<InputLogEvent> events) {
+            PutLogEventsRequest request = new PutLogEventsRequest(logGroup, logStream, events);
+            try {
+                PutLogEventsResult result = client.putLogEvents(request.withSequenceToken(token));
+                token = result.getNextSequenceToken();
+            } catch (DataAlreadyAcceptedException ex) {
+                // the same batch was already accepted, e.g. response to the previous attempt was lost
+                token = ex.getExpectedSequenceToken();
+            } catch (InvalidSequenceTokenException ex) {
+                token = ex.getExpectedSequenceToken();
+                PutLogEventsResult result = client.putLogEvents(request.withSequenceToken(token));
+                token = result.getNextSequenceToken();
+            }
+        }
+    }
+
+    /**
+     * Each request needs the sequence token returned by the previous one, so concurrent requests of a stream would
+     * only race for it. Requests are sent one at a time instead: a request submitted while another one is in flight
+     * waits for it, and is sent from its completion callback with the new token.
+     */
+    private final class AsyncLogStream extends LogStream implements AsyncChannel {
+        private final Queue<PendingRequest> pending = new ArrayDeque<>();
+        private boolean sending;
+
+        AsyncLogStream(String logGroup, String logStream) {
+            super(logGroup, logStream);
+        }
+
+        @Override
+        public void sendAsync(List<InputLogEvent> events, Callback callback) {
+            PendingRequest request = new PendingRequest(new PutLogEventsRequest(logGroup, logStream, events), callback);
+            synchronized (this) {
+                if (sending) {
+                    pending.add(request);
+                    return;
+                }
+                sending = true;
+            }
+            start(request);
+        }
+
+        private void start(PendingRequest request) {
+            try {
+                submit(request.request, 0, request.callback);
+            } catch (RejectedExecutionException ex) {
+                // client is already shut down
+                sendNext();
+                request.callback.onError(ex);
+            }
+        }
+
+        /**
+         * Submits request with the current token, resubmitting it while the token turns out to be stale.
+         */
+        private void submit(PutLogEventsRequest request, int retries, Callback callback) {
+            ((AWSLogsAsync) client).putLogEventsAsync(request.withSequenceToken(token),
+                    new AsyncHandler<PutLogEventsRequest, PutLogEventsResult>() {
+                        @Override
+                        public void onError(Exception exception) {
+                            if (exception instanceof DataAlreadyAcceptedException) {
+                                token = ((DataAlreadyAcceptedException) exception).getExpectedSequenceToken();
+                                sendNext();
+                                callback.onSuccess();
+                            } else if (exception instanceof InvalidSequenceTokenException
+                                    && retries < MAX_TOKEN_RETRIES) {
+                                token = ((InvalidSequenceTokenException) exception).getExpectedSequenceToken();
+                                resubmit(request, retries + 1, callback);
+                            } else {
+                                sendNext();
+                                callback.onError(exception);
+                            }
+                        }
+
+                        @Override
+                        public void onSuccess(PutLogEventsRequest request, PutLogEventsResult result) {
+                            token = result.getNextSequenceToken();
+                            sendNext();
+                            callback.onSuccess();
+                        }
+                    });
+        }
+
+        private void resubmit(PutLogEventsRequest request, int retries, Callback callback) {
+            try {
+                submit(request, retries, callback);
+            } catch (RejectedExecutionException ex) {
+                // client is already shut down
+                sendNext();
+                callback.onError(ex);
+            }
+        }
+
+        /**
+         * Sends the next waiting request, if any, once the previous one is completed. It's called before the caller of
+         * the completed request is notified, so that the stream doesn't stay idle while the callback runs.
+         */
+        private void sendNext() {
+            PendingRequest next;
+            synchronized (this) {
+                next = pending.poll();
+                if (next == null) {
+                    sending = false;
+                }
+            }
+            if (next != null) {
+                start(next);
+            }
+        }
+    }
+
+    private static final class PendingRequest {
+        final PutLogEventsRequest request;
+        final Callback callback;
+
+        PendingRequest(PutLogEventsRequest request, Callback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.intapp.platform.logging.logback.sink;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes events as lines to local files or to standard output, for a sidecar collector or container log driver
+ * to pick them up. Layout should produce single-line events, e.g. JSON; trailing line separator is dropped.
+ * <p>
+ * Each log stream is written to {@code <directory>/<logGroup>/<logStream>.log}. When the file would exceed the maximum
+ * size, it's rolled over: renamed to {@code <logStream>.log.1}, previously rolled files are shifted by one and
+ * the oldest one is deleted. A batch is written with a single write, so lines are never interleaved.
+ */
+public class FileSink implements LogSink {
+    public static final long DEFAULT_MAX_FILE_SIZE = 100L * 1024 * 1024;
+    public static final int DEFAULT_MAX_HISTORY = 5;
+
+    public static final SinkLimits LIMITS = new SinkLimits(10_000, 4 * 1024 * 1024, 1024 * 1024 - 1, 1,
+            Long.MAX_VALUE);
+
+    private final File directory;
+    private final long maxFileSize;
+    private final int maxHistory;
+    private final Set<LogFile> files = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param directory directory of log group subdirectories
+     * @param maxFileSize size (in bytes) at which a file is rolled over; files aren't rolled over when not positive
+     * @param maxHistory number of rolled over files kept per log stream
+     */
+    public FileSink(File directory, long maxFileSize, int maxHistory) {
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+        this.maxHistory = Math.max(0, maxHistory);
+    }
+
+    public FileSink(File directory) {
+        this(directory, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_HISTORY);
+    }
+
+    /**
+     * @return sink writing events of all log streams to standard output
+     */
+    public static LogSink stdout() {
+        return new LogSink() {
+            @Override
+            public SinkLimits getLimits() {
+                return LIMITS;
+            }
+
+            @Override
+            public Channel open(String logGroup, String logStream) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+                return events -> {
+                    // print stream is synchronized, so a batch written at once isn't interleaved with other output
+                    encode(events, buffer).writeTo(System.out);
+                    System.out.flush();
+                };
+            }
+
+            @Override
+            public void shutdown() {
+                // standard output isn't closed
+            }
+        };
+    }
+
+    @Override
+    public SinkLimits getLimits() {
+        return LIMITS;
+    }
+
+    @Override
+    public Channel open(String logGroup, String logStream) throws IOException {
+        File groupDirectory = new File(directory, toFileName(logGroup));
+        if (!groupDirectory.isDirectory() && !groupDirectory.mkdirs()) {
+            throw new IOException("Failed to create log directory " + groupDirectory);
+        }
+
+        LogFile file = new LogFile(new File(groupDirectory, toFileName(logStream) + ".log"));
+        file.open();
+        files.add(file);
+        return file;
+    }
+
+    @Override
+    public void shutdown() {
+        for (LogFile file : files) {
+            file.close();
+        }
+        files.clear();
+    }
+
+    /**
+     * Writes messages of the events as lines to the buffer.
+     */
+    static ByteArrayOutputStream encode(List<InputLogEvent> events, ByteArrayOutputStream buffer) {
+        buffer.reset();
+        for (InputLogEvent event : events) {
+            byte[] message = Lines.encode(event.getMessage());
+            buffer.write(message, 0, message.length);
+            buffer.write(Lines.SEPARATOR);
+        }
+        return buffer;
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private final class LogFile implements Channel {
+        private final File file;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+        private FileOutputStream out;
+        private long size;
+        private boolean closed;
+
+        LogFile(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public synchronized void send(List<InputLogEvent> events) throws IOException {
+            if (closed) {
+                throw new IOException("Sink is shut down, events weren't written to " + file);
+            }
+
+            encode(events, buffer);
+            if (maxFileSize > 0 && size > 0 && size + buffer.size() > maxFileSize) {
+                roll();
+            }
+            buffer.writeTo(out);
+            size += buffer.size();
+        }
+
+        synchronized void open() throws IOException {
+            out = new FileOutputStream(file, true);
+            size = file.length();
+        }
+
+        /**
+         * Shifts rolled over files by one, deleting the oldest one, and starts a new file.
+         */
+        private void roll() throws IOException {
+            out.close();
+            try {
+                for (int i = maxHistory; i > 0; i--) {
+                    File rolled = new File(file.getPath() + '.' + i);
+                    if (i == maxHistory) {
+                        delete(rolled);
+                    } else if (rolled.exists() && !rolled.renameTo(new File(file.getPath() + '.' + (i + 1)))) {
+                        throw new IOException("Failed to roll over log file " + rolled);
+                    }
+                }
+                if (maxHistory == 0) {
+                    delete(file);
+                } else if (!file.renameTo(new File(file.getPath() + ".1"))) {
+                    throw new IOException("Failed to roll over log file " + file);
+                }
+            } finally {
+                // file which failed to roll over keeps growing until the next attempt succeeds
+                open();
+            }
+        }
+
+        private void delete(File rolled) throws IOException {
+            if (rolled.exists() && !rolled.delete()) {
+                throw new IOException("Failed to delete log file " + rolled);
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException ex) {
+                // nothing is buffered, so nothing is lost
+            }
+        }
+    }
+}
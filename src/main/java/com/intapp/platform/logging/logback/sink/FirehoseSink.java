@@ -0,0 +1,159 @@
+package com.intapp.platform.logging.logback.sink;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.model.DescribeDeliveryStreamRequest;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchRequest;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResponseEntry;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResult;
+import com.amazonaws.services.kinesisfirehose.model.Record;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static java.lang.String.format;
+
+/**
+ * Sends events to a Kinesis Data Firehose delivery stream with {@code PutRecordBatch} requests.
+ * <p>
+ * Events of a batch are written as lines (so layout should produce single-line events, e.g. JSON) and packed into
+ * gzip-compressed records of up to {@code RECORD_CHUNK_BYTES} uncompressed, far fewer than one record per event.
+ * Concatenated records form a valid gzip stream, so objects delivered e.g. to S3 are readable as a whole. Records
+ * rejected by the service are resent at most {@code MAX_RECORD_RETRIES} times; after that the request fails and
+ * the appender retries the whole batch, so events are delivered at least once.
+ */
+public class FirehoseSink implements LogSink {
+
+    /**
+     * Uncompressed size of a single record, in bytes. Compressed record of incompressible data is slightly larger
+     * than the data, but still within 1000 KiB record size limit.
+     */
+    static final int RECORD_CHUNK_BYTES = 960 * 1024;
+
+    /**
+     * Batch size is limited so that compressed records fit into 4 MiB request size limit in the worst case.
+     */
+    public static final SinkLimits LIMITS = new SinkLimits(50_000, 4 * 1024 * 1024 - 64 * 1024,
+            RECORD_CHUNK_BYTES - 1, 1, Long.MAX_VALUE);
+
+    private static final int MAX_RECORD_RETRIES = 2;
+
+    private final AmazonKinesisFirehose client;
+    private final String deliveryStream;
+
+    /**
+     * @param client Firehose client
+     * @param deliveryStream name of the delivery stream; when {@code null}, events of each log group are sent
+     *                       to the delivery stream of the same name
+     */
+    public FirehoseSink(AmazonKinesisFirehose client, String deliveryStream) {
+        this.client = client;
+        this.deliveryStream = deliveryStream;
+    }
+
+    @Override
+    public SinkLimits getLimits() {
+        return LIMITS;
+    }
+
+    /**
+     * Checks that the delivery stream exists; delivery streams aren't created by the sink.
+     */
+    @Override
+    public Channel open(String logGroup, String logStream) {
+        String name = StringUtils.isNullOrEmpty(deliveryStream) ? logGroup : deliveryStream;
+        client.describeDeliveryStream(new DescribeDeliveryStreamRequest().withDeliveryStreamName(name));
+        return new DeliveryStream(name);
+    }
+
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    /**
+     * Packs events into gzip-compressed records, each one holding lines of up to {@code RECORD_CHUNK_BYTES}.
+     */
+    static List<Record> pack(List<InputLogEvent> events, ByteArrayOutputStream buffer) throws IOException {
+        List<Record> records = new ArrayList<>();
+        OutputStream out = null;
+        int chunkBytes = 0;
+        for (InputLogEvent event : events) {
+            byte[] message = Lines.encode(event.getMessage());
+            if (out != null && chunkBytes + message.length + 1 > RECORD_CHUNK_BYTES) {
+                records.add(finish(out, buffer));
+                out = null;
+            }
+            if (out == null) {
+                buffer.reset();
+                out = new GZIPOutputStream(buffer);
+                chunkBytes = 0;
+            }
+            out.write(message);
+            out.write(Lines.SEPARATOR);
+            chunkBytes += message.length + 1;
+        }
+        if (out != null) {
+            records.add(finish(out, buffer));
+        }
+        return records;
+    }
+
+    private static Record finish(OutputStream out, ByteArrayOutputStream buffer) throws IOException {
+        out.close();
+        return new Record().withData(ByteBuffer.wrap(buffer.toByteArray()));
+    }
+
+    private final class DeliveryStream implements Channel {
+        private final String name;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(RECORD_CHUNK_BYTES / 4);
+
+        DeliveryStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void send(List<InputLogEvent> events) throws IOException {
+            List<Record> records = pack(events, buffer);
+            for (int retries = 0; ; retries++) {
+                PutRecordBatchResult result = client.putRecordBatch(new PutRecordBatchRequest()
+                        .withDeliveryStreamName(name).withRecords(records));
+                if (result.getFailedPutCount() == null || result.getFailedPutCount() == 0) {
+                    return;
+                }
+
+                // response entries are in the order of request records
+                List<Record> failed = new ArrayList<>(result.getFailedPutCount());
+                String errorCode = null;
+                List<PutRecordBatchResponseEntry> entries = result.getRequestResponses();
+                for (int i = 0; i < entries.size(); i++) {
+                    if (entries.get(i).getErrorCode() != null) {
+                        failed.add(records.get(i));
+                        errorCode = entries.get(i).getErrorCode();
+                    }
+                }
+                if (retries >= MAX_RECORD_RETRIES) {
+                    throw recordFailure(failed.size(), records.size(), errorCode);
+                }
+                records = failed;
+            }
+        }
+
+        private AmazonServiceException recordFailure(int failed, int total, String errorCode) {
+            AmazonServiceException ex = new AmazonServiceException(format("%d of %d records were rejected by "
+                    + "delivery stream '%s'", failed, total, name));
+            ex.setServiceName("AmazonKinesisFirehose");
+            ex.setErrorCode(errorCode);
+            // failed records are rejected by throttling or internal errors, both of them transient
+            ex.setStatusCode("ServiceUnavailableException".equals(errorCode) ? 503 : 500);
+            return ex;
+        }
+    }
+}
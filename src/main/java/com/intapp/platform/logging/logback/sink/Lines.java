@@ -0,0 +1,29 @@
+package com.intapp.platform.logging.logback.sink;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding of events for sinks writing them as lines.
+ */
+final class Lines {
+    static final byte SEPARATOR = '\n';
+
+    private Lines() {
+    }
+
+    /**
+     * Encodes message as UTF-8 without its trailing line separator, which pattern layouts usually end events with,
+     * so that a separator added by the sink doesn't produce empty lines.
+     * @return encoded message, not including line separator
+     */
+    static byte[] encode(String message) {
+        int end = message.length();
+        if (end > 0 && message.charAt(end - 1) == '\n') {
+            end--;
+            if (end > 0 && message.charAt(end - 1) == '\r') {
+                end--;
+            }
+        }
+        return (end == message.length() ? message : message.substring(0, end)).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package com.intapp.platform.logging.logback.sink;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Transport delivering batches of formatted log events to their destination.
+ * <p>
+ * The appender takes care of queuing, batching within the limits declared by the sink, rate limiting, retries,
+ * circuit breaking and spilling to disk; a sink only delivers the batch it's given. Destinations are named by log
+ * group and log stream, as configured for the appender and its routing rules, and each sink maps them to its own
+ * destinations.
+ * <p>
+ * Failures reported as {@link com.amazonaws.AmazonClientException} are retried when they are transient (throttling,
+ * server or network errors); any other failure hands the batch over to the spill buffer right away.
+ */
+public interface LogSink {
+
+    /**
+     * @return limits of a single batch and of a single event
+     */
+    SinkLimits getLimits();
+
+    /**
+     * Opens destination of the log stream, creating it if necessary. Called by the appender worker of the stream, which
+     * keeps buffering events and retries opening until it succeeds.
+     * @param logGroup name of the log group
+     * @param logStream name of the log stream
+     * @return channel sending events to the destination, used by a single worker
+     * @throws IOException if destination can't be opened
+     */
+    Channel open(String logGroup, String logStream) throws IOException;
+
+    /**
+     * @return {@code true} if channels opened by the sink are {@link AsyncChannel}s, allowing several batches
+     * in flight
+     */
+    default boolean isAsync() {
+        return false;
+    }
+
+    /**
+     * Releases resources of the sink, e.g. its client or open files, once the appender is stopped.
+     */
+    void shutdown();
+
+    /**
+     * Destination of a single log stream.
+     */
+    interface Channel {
+
+        /**
+         * Sends a batch of events.
+         * @param events events in chronological order; the list and its events are reused once the method returns
+         * @throws IOException if events weren't sent
+         */
+        void send(List<InputLogEvent> events) throws IOException;
+    }
+
+    /**
+     * Destination of a single log stream which can also send batches asynchronously.
+     */
+    interface AsyncChannel extends Channel {
+
+        /**
+         * Sends a batch of events asynchronously.
+         * @param events events in chronological order; the list and its events are reused once the callback is called
+         * @param callback receiver of the result, called exactly once
+         */
+        void sendAsync(List<InputLogEvent> events, Callback callback);
+    }
+
+    /**
+     * Receiver of the result of asynchronous sending.
+     */
+    interface Callback {
+
+        void onSuccess();
+
+        void onError(Exception exception);
+    }
+}
@@ -0,0 +1,54 @@
+package com.intapp.platform.logging.logback.sink;
+
+import lombok.Getter;
+
+import static java.lang.String.format;
+
+/**
+ * Limits of a single batch of events sent by a {@link LogSink}. Batch size is calculated as the sum of UTF-8 encoded
+ * messages plus fixed per-event overhead.
+ */
+@Getter
+public final class SinkLimits {
+
+    /**
+     * Maximum number of events in a batch.
+     */
+    private final int maxBatchCount;
+
+    /**
+     * Maximum size of a batch, in bytes.
+     */
+    private final int maxBatchBytes;
+
+    /**
+     * Maximum size of a single event message, in bytes; larger events are truncated or split by the appender.
+     */
+    private final int maxEventBytes;
+
+    /**
+     * Number of bytes added to each event when calculating batch size.
+     */
+    private final int eventOverheadBytes;
+
+    /**
+     * Maximum time span (in ms) between the earliest and the latest event of a batch.
+     */
+    private final long maxBatchTimeSpan;
+
+    public SinkLimits(int maxBatchCount, int maxBatchBytes, int maxEventBytes, int eventOverheadBytes,
+                      long maxBatchTimeSpan) {
+        if (maxBatchCount < 1 || maxEventBytes < 1 || eventOverheadBytes < 0 || maxBatchTimeSpan < 0
+                || maxEventBytes + eventOverheadBytes > maxBatchBytes) {
+            throw new IllegalArgumentException(format("Invalid sink limits: %d events, %d bytes per batch, "
+                    + "%d (+%d) bytes per event, %d ms span", maxBatchCount, maxBatchBytes, maxEventBytes,
+                    eventOverheadBytes, maxBatchTimeSpan));
+        }
+
+        this.maxBatchCount = maxBatchCount;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxEventBytes = maxEventBytes;
+        this.eventOverheadBytes = eventOverheadBytes;
+        this.maxBatchTimeSpan = maxBatchTimeSpan;
+    }
+}
@@ -0,0 +1,26 @@
+package com.intapp.platform.logging.logback.sink;
+
+/**
+ * Defines where CloudWatch appender sends logging events.
+ */
+public enum SinkType {
+    /**
+     * CloudWatch Logs log streams, see {@link CloudWatchLogsSink}.
+     */
+    CLOUDWATCH_LOGS,
+
+    /**
+     * Kinesis Data Firehose delivery stream, as gzip-compressed records, see {@link FirehoseSink}.
+     */
+    FIREHOSE,
+
+    /**
+     * Rolling local files, e.g. for a sidecar log collector, see {@link FileSink}.
+     */
+    FILE,
+
+    /**
+     * Standard output, e.g. for a container log driver, see {@link FileSink#stdout()}.
+     */
+    STDOUT
+}
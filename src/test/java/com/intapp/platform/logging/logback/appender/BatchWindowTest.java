@@ -0,0 +1,47 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchWindowTest {
+
+    @Test
+    public void testLingerFollowsRequestRateAndLatency() {
+        //Arrange
+        BatchWindow window = new BatchWindow(10, 1000);
+
+        //Act
+        long fast = window.getLinger(50);
+        long throttled = window.getLinger(0.5);
+        for (int i = 0; i < 50; i++) {
+            window.onRequest(400);
+        }
+        long slow = window.getLinger(50);
+
+        //Assert
+        assertThat(fast).isEqualTo(40);
+        assertThat(throttled).isEqualTo(1000);
+        assertThat(slow).isBetween(390L, 400L);
+    }
+
+    @Test
+    public void testTargetBytesFollowArrivalRate() {
+        //Arrange
+        BatchWindow window = new BatchWindow(10, 1000);
+
+        //Act
+        int quiet = window.getTargetBytes(50);
+        for (int i = 0; i < 50; i++) {
+            window.onBatch(400_000, 40);
+        }
+        int busy = window.getTargetBytes(50);
+        int throttled = window.getTargetBytes(5);
+
+        //Assert
+        assertThat(quiet).isEqualTo(16 * 1024);
+        assertThat(busy).isEqualTo(400_000);
+        assertThat(throttled).isEqualTo(CloudWatchLogsSink.MAX_BATCH_BYTES);
+    }
+}
@@ -0,0 +1,61 @@
+package com.intapp.platform.logging.logback.appender;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        //Arrange
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 4000);
+
+        //Act
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        //Assert
+        assertThat(breaker.isOpen()).isFalse();
+        breaker.onFailure();
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.getRemainingOpenTime()).isBetween(1L, 1000L);
+    }
+
+    @Test
+    public void testProbeResult() throws InterruptedException {
+        //Arrange
+        CircuitBreaker breaker = new CircuitBreaker(1, 10, 1000);
+        breaker.onFailure();
+        Thread.sleep(20);
+
+        //Act & Assert
+        assertThat(breaker.getRemainingOpenTime()).isZero();
+        breaker.onFailure();
+        assertThat(breaker.getRemainingOpenTime()).isBetween(1L, 20L);
+        Thread.sleep(30);
+        breaker.onSuccess();
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(breaker.getRemainingOpenTime()).isZero();
+    }
+
+    @Test
+    public void testSingleProbeIsAllowedAfterOpenPeriod() throws InterruptedException {
+        //Arrange
+        CircuitBreaker breaker = new CircuitBreaker(1, 10, 1000);
+        breaker.onFailure();
+
+        //Act & Assert
+        assertThat(breaker.tryAcquire()).isFalse();
+        Thread.sleep(20);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.getRemainingOpenTime()).isBetween(1L, 10L);
+        breaker.onSuccess();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+}
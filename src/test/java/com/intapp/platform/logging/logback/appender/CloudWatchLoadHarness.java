@@ -0,0 +1,211 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.logs.AWSLogsAsyncClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.String.format;
+
+/**
+ * Soak and load harness running {@link AmazonCloudWatchAppender} against {@link LocalCloudWatchLogsServer}
+ * under each fault profile, reporting throughput, drop rate and delivery latency percentiles.
+ * <p>
+ * Run with {@code ./gradlew loadTest}; settings are read from system properties:
+ * <ul>
+ * <li>{@code load.duration} - time of producing events per profile, in seconds (default 30)</li>
+ * <li>{@code load.rate} - target rate of produced events per second (default 20000)</li>
+ * <li>{@code load.threads} - number of producer threads (default 4)</li>
+ * <li>{@code load.shards} - number of log streams (default 1)</li>
+ * <li>{@code load.inFlight} - maximum number of in-flight requests per log stream (default 4)</li>
+ * </ul>
+ */
+public final class CloudWatchLoadHarness {
+    private static final String LOG_GROUP = "load";
+    private static final String LOG_STREAM = "harness";
+    private static final long DRAIN_TIME = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_LATENCY = 120000;
+
+    private static final List<LocalCloudWatchLogsServer.Faults> PROFILES = Arrays.asList(
+            LocalCloudWatchLogsServer.Faults.NONE,
+            new LocalCloudWatchLogsServer.Faults("latency-200ms", 200, 0, 0, 0),
+            new LocalCloudWatchLogsServer.Faults("throttling-20%", 0, 0.2, 0, 0),
+            new LocalCloudWatchLogsServer.Faults("errors-10%", 0, 0, 0.1, 0),
+            new LocalCloudWatchLogsServer.Faults("resets-5%", 0, 0, 0, 0.05),
+            new LocalCloudWatchLogsServer.Faults("mixed", 100, 0.1, 0.05, 0.02));
+
+    private final long duration = TimeUnit.SECONDS.toMillis(Long.getLong("load.duration", 30));
+    private final int rate = Integer.getInteger("load.rate", 20000);
+    private final int threads = Integer.getInteger("load.threads", 4);
+    private final int shards = Integer.getInteger("load.shards", 1);
+    private final int inFlight = Integer.getInteger("load.inFlight", 4);
+
+    private CloudWatchLoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // keep the report readable, client logs every request at debug level
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.WARN);
+
+        CloudWatchLoadHarness harness = new CloudWatchLoadHarness();
+        System.out.println(format("duration=%ds rate=%d/s threads=%d shards=%d inFlight=%d",
+                TimeUnit.MILLISECONDS.toSeconds(harness.duration), harness.rate, harness.threads, harness.shards,
+                harness.inFlight));
+        System.out.println(format("%-16s %10s %10s %8s %10s %8s %12s %8s %8s %8s %8s",
+                "profile", "produced", "delivered", "dups", "dropped", "drop%", "events/s", "p50ms", "p99ms",
+                "p999ms", "maxms"));
+
+        for (LocalCloudWatchLogsServer.Faults faults : PROFILES) {
+            System.out.println(harness.run(faults));
+        }
+    }
+
+    private String run(LocalCloudWatchLogsServer.Faults faults) throws Exception {
+        Delivery delivery = new Delivery();
+        try (LocalCloudWatchLogsServer server = new LocalCloudWatchLogsServer(Math.max(8, shards * inFlight))) {
+            server.setListener(delivery::onEvent);
+
+            LoggerContext context = new LoggerContext();
+            PatternLayout layout = new PatternLayout();
+            layout.setContext(context);
+            layout.setPattern("%d %-5level [%thread] %logger{36} - %msg");
+            layout.start();
+
+            AWSLogsAsyncClient client = new AWSLogsAsyncClient(new BasicAWSCredentials("load", "load"),
+                    new ClientConfiguration().withMaxErrorRetry(0),
+                    Executors.newFixedThreadPool(shards * inFlight));
+            client.setEndpoint(server.getEndpoint());
+
+            AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+            appender.setContext(context);
+            appender.setLogGroup(LOG_GROUP);
+            appender.setLogStream(LOG_STREAM);
+            appender.setAwsLogsClient(client);
+            appender.setLayout(layout);
+            appender.setShardCount(shards);
+            appender.setMaxInFlightRequests(inFlight);
+            appender.start();
+            server.setFaults(faults);
+
+            AtomicLong produced = new AtomicLong();
+            long start = System.currentTimeMillis();
+            List<Thread> producers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                Thread producer = new Thread(() -> produce(appender, context, produced, start + duration));
+                producer.start();
+                producers.add(producer);
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            // let the appender deliver what it still holds before stopping it
+            long deadline = System.currentTimeMillis() + DRAIN_TIME;
+            while (appender.getQueuedCount() > 0 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            appender.stop();
+            client.shutdown();
+            long elapsed = System.currentTimeMillis() - start;
+
+            long delivered = delivery.getUnique();
+            long dropped = produced.get() - delivered;
+            return format("%-16s %10d %10d %8d %10d %7.3f%% %12.0f %8d %8d %8d %8d",
+                    faults, produced.get(), delivered, delivery.getDuplicates(), dropped,
+                    100.0 * dropped / Math.max(1, produced.get()), delivered * 1000.0 / elapsed,
+                    delivery.getLatencyPercentile(0.5), delivery.getLatencyPercentile(0.99),
+                    delivery.getLatencyPercentile(0.999), delivery.getLatencyPercentile(1));
+        }
+    }
+
+    /**
+     * Produces events with sequence numbers in their messages at the target rate, shared between producers.
+     */
+    private void produce(AmazonCloudWatchAppender appender, LoggerContext context, AtomicLong produced, long end) {
+        long interval = TimeUnit.SECONDS.toNanos(threads) / rate;
+        long next = System.nanoTime();
+        while (System.currentTimeMillis() < end) {
+            long sequence = produced.getAndIncrement();
+            appender.doAppend(new LoggingEvent(CloudWatchLoadHarness.class.getName(),
+                    context.getLogger(CloudWatchLoadHarness.class), Level.INFO, "Event #{}", null,
+                    new Object[]{sequence}));
+
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     * Tracks events accepted by the server: unique sequence numbers, duplicates and delivery latency.
+     */
+    private static final class Delivery {
+        private final BitSet received = new BitSet();
+        private final AtomicLongArray latencies = new AtomicLongArray(MAX_LATENCY + 1);
+        private long unique;
+        private long duplicates;
+
+        private void onEvent(String logStream, JsonNode event) {
+            long latency = System.currentTimeMillis() - event.path("timestamp").asLong();
+            latencies.incrementAndGet((int) Math.max(0, Math.min(MAX_LATENCY, latency)));
+
+            String message = event.path("message").asText();
+            int sequence = Integer.parseInt(message.substring(message.lastIndexOf('#') + 1));
+            synchronized (this) {
+                if (received.get(sequence)) {
+                    duplicates++;
+                } else {
+                    received.set(sequence);
+                    unique++;
+                }
+            }
+        }
+
+        private synchronized long getUnique() {
+            return unique;
+        }
+
+        private synchronized long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return delivery latency of the given fraction of events, in ms
+         */
+        private long getLatencyPercentile(double fraction) {
+            long total = 0;
+            for (int i = 0; i < latencies.length(); i++) {
+                total += latencies.get(i);
+            }
+
+            long target = (long) Math.ceil(total * fraction);
+            long count = 0;
+            for (int i = 0; i < latencies.length(); i++) {
+                count += latencies.get(i);
+                if (count >= target && count > 0) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.LayoutBase;
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import com.intapp.platform.logging.logback.sink.LogSink;
+import com.intapp.platform.logging.logback.sink.SinkLimits;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeferredLayoutTest {
+    private static final long FORMAT_TIME = 800;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWorkerInterruptedOnStopWaitsForFormatterThreads() throws Exception {
+        //Arrange
+        CountDownLatch opened = new CountDownLatch(1);
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(new LoggerContext());
+        appender.setLogGroup("group");
+        appender.setLogStream("stream");
+        appender.setLayout(new SlowLayout());
+        appender.setDeferredLayout(true);
+        appender.setFormatterThreads(2);
+        appender.setMaxFlushTime(100);
+        appender.setSpillDirectory(folder.getRoot().getPath());
+        appender.setSink(new LogSink() {
+            @Override
+            public SinkLimits getLimits() {
+                return CloudWatchLogsSink.LIMITS;
+            }
+
+            @Override
+            public Channel open(String logGroup, String logStream) {
+                // events are queued meanwhile, so the worker formats them together, on formatter threads too
+                try {
+                    opened.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return events -> events.forEach(event -> sent.add(event.getMessage()));
+            }
+
+            @Override
+            public void shutdown() {
+                // nothing to release
+            }
+        });
+        appender.start();
+        LoggerContext context = (LoggerContext) appender.getContext();
+        for (int i = 0; i < 3; i++) {
+            appender.doAppend(new LoggingEvent(DeferredLayoutTest.class.getName(), context.getLogger("test"), Level.INFO,
+                    "event-" + i, null, null));
+        }
+
+        //Act
+        opened.countDown();
+        // formatting outlasts flush deadline, so the worker is interrupted while waiting for formatter threads
+        appender.stop();
+
+        //Assert
+        List<String> delivered = new ArrayList<>(sent);
+        try (SpillBuffer spillBuffer = new SpillBuffer(new File(new File(folder.getRoot(), "group"), "stream"),
+                8 * 1024 * 1024, 16)) {
+            for (LogEntry entry : spillBuffer.read(CloudWatchLogsSink.MAX_BATCH_COUNT,
+                    CloudWatchLogsSink.MAX_BATCH_BYTES)) {
+                delivered.add(entry.getMessage());
+            }
+        }
+        assertThat(delivered).containsExactlyInAnyOrder("formatted-0", "formatted-1", "formatted-2");
+        assertThat(appender.getMetrics().getDroppedEvents()).isZero();
+    }
+
+    /**
+     * Layout which takes a while on formatter threads, ignoring interrupts.
+     */
+    private static class SlowLayout extends LayoutBase<ILoggingEvent> {
+        @Override
+        public String doLayout(ILoggingEvent event) {
+            if (Thread.currentThread().getName().contains("formatter")) {
+                long deadline = System.currentTimeMillis() + FORMAT_TIME;
+                for (long remaining = FORMAT_TIME; remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(remaining);
+                    } catch (InterruptedException ex) {
+                        // formatting isn't abandoned
+                    }
+                }
+            }
+            return event.getMessage().replace("event", "formatted");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DuplicateFilterTest {
+    private static final long WINDOW = 1000;
+
+    private final LoggerContext context = new LoggerContext();
+
+    @Test
+    public void testRepeatsAreCountedAndSummarized() {
+        //Arrange
+        DuplicateFilter filter = new DuplicateFilter(WINDOW, 16);
+        List<ILoggingEvent> summaries = new ArrayList<>();
+        ConnectException exception = new ConnectException("Connection refused");
+
+        //Act
+        List<Boolean> accepted = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            accepted.add(filter.accept(event(i, "Connection to {} failed", exception, "host" + i), summaries::add));
+        }
+        filter.sweep(WINDOW, summaries::add);
+
+        //Assert
+        assertThat(accepted).containsExactly(true, false, false, false, false);
+        assertThat(summaries).hasSize(1);
+        assertThat(summaries.get(0).getFormattedMessage())
+                .isEqualTo("Previous message repeated 4 times in 1000 ms: Connection to host0 failed");
+        assertThat(summaries.get(0).getLevel()).isEqualTo(Level.WARN);
+    }
+
+    @Test
+    public void testDifferentEventsAndWindowEnd() {
+        //Arrange
+        DuplicateFilter filter = new DuplicateFilter(WINDOW, 16);
+        List<ILoggingEvent> summaries = new ArrayList<>();
+
+        //Act & Assert
+        assertThat(filter.accept(event(0, "first", null), summaries::add)).isTrue();
+        assertThat(filter.accept(event(0, "second", null), summaries::add)).isTrue();
+        assertThat(filter.accept(event(0, "first", new IllegalStateException()), summaries::add)).isTrue();
+        assertThat(filter.accept(event(WINDOW, "first", null), summaries::add)).isTrue();
+        assertThat(summaries).isEmpty();
+    }
+
+    private LoggingEvent event(long timestamp, String message, Throwable throwable, Object... arguments) {
+        LoggingEvent event = new LoggingEvent(DuplicateFilterTest.class.getName(), context.getLogger("test"),
+                Level.WARN, message, throwable, arguments);
+        event.setTimeStamp(timestamp);
+        return event;
+    }
+}
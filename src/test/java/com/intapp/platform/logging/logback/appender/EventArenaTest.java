@@ -0,0 +1,109 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventArenaTest {
+
+    @Test
+    public void testMessageSpansPagesAndPagesAreReused() {
+        //Arrange
+        EventArena arena = new EventArena(8 * EventArena.PAGE_SIZE);
+        byte[] message = Strings.repeat("événement 😀 ", 10).getBytes(StandardCharsets.UTF_8);
+        byte[] copy = new byte[message.length];
+
+        //Act
+        int[] pages = arena.allocate(message.length);
+        arena.write(pages, message, message.length);
+        int[] rejected = arena.allocate(6 * EventArena.PAGE_SIZE);
+        arena.read(pages, copy, message.length);
+        long usedBytes = arena.getUsedBytes();
+        arena.release(pages);
+
+        //Assert
+        assertThat(pages).hasSize((message.length + EventArena.PAGE_SIZE - 1) / EventArena.PAGE_SIZE);
+        assertThat(rejected).isNull();
+        assertThat(copy).isEqualTo(message);
+        assertThat(usedBytes).isEqualTo(pages.length * EventArena.PAGE_SIZE);
+        assertThat(arena.getUsedBytes()).isZero();
+        assertThat(arena.allocate(8 * EventArena.PAGE_SIZE)).hasSize(8);
+        assertThat(arena.getAllocatedBytes()).isEqualTo(8 * EventArena.PAGE_SIZE);
+    }
+
+    @Test
+    public void testAllocationWaitsForReleasedPages() throws Exception {
+        //Arrange
+        EventArena arena = new EventArena(4 * EventArena.PAGE_SIZE);
+        int[] pages = arena.allocate(4 * EventArena.PAGE_SIZE);
+
+        //Act
+        CompletableFuture<int[]> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return arena.allocate(EventArena.PAGE_SIZE, 5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        TimeUnit.MILLISECONDS.sleep(100);
+        boolean completedEarly = waiting.isDone();
+        arena.release(pages);
+
+        //Assert
+        assertThat(completedEarly).isFalse();
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).hasSize(1);
+        assertThat(arena.allocate(5 * EventArena.PAGE_SIZE, 10, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testConcurrentAllocationKeepsMessagesApartAndWithinBudget() throws Exception {
+        //Arrange
+        int threads = 4;
+        EventArena arena = new EventArena(64 * EventArena.PAGE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        //Act
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            String prefix = "thread " + thread + " ";
+            futures.add(executor.submit(() -> {
+                int allocated = 0;
+                for (int i = 0; i < 10000; i++) {
+                    byte[] message = Strings.repeat(prefix + i + " ", i % 20 + 1).getBytes(StandardCharsets.UTF_8);
+                    int[] pages = arena.allocate(message.length);
+                    if (pages == null) {
+                        continue;
+                    }
+                    allocated++;
+                    arena.write(pages, message, message.length);
+                    byte[] copy = new byte[message.length];
+                    arena.read(pages, copy, message.length);
+                    arena.release(pages);
+                    assertThat(copy).isEqualTo(message);
+                }
+                return allocated;
+            }));
+        }
+        int allocated = 0;
+        for (Future<Integer> future : futures) {
+            allocated += future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        //Assert
+        assertThat(allocated).isPositive();
+        assertThat(arena.getUsedBytes()).isZero();
+        assertThat(arena.getAllocatedBytes()).isEqualTo(64 * EventArena.PAGE_SIZE);
+        assertThat(arena.allocate(64 * EventArena.PAGE_SIZE)).hasSize(64);
+    }
+}
@@ -0,0 +1,392 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static java.lang.String.format;
+
+/**
+ * Local stand-in for CloudWatch Logs service, implementing JSON protocol of {@code CreateLogGroup},
+ * {@code CreateLogStream} and {@code PutLogEvents} operations, for load and fault-injection testing.
+ * <p>
+ * {@code PutLogEvents} requests are validated against the service limits (batch size and count, event size,
+ * chronological order, time span) and sequence token rules, including {@code DataAlreadyAcceptedException} for
+ * a repeated batch. Events outside of the accepted time range are reported as rejected.
+ * <p>
+ * Faults are injected into {@code PutLogEvents} requests according to the {@link Faults} profile: added latency,
+ * throttling, internal errors and connections closed without response after the request was processed.
+ * Creation of log groups and streams can be slowed down separately, see {@link #setProvisioningLatency(long)}.
+ */
+class LocalCloudWatchLogsServer implements AutoCloseable {
+    private static final String TARGET_PREFIX = "Logs_20140328.";
+    private static final String CONTENT_TYPE = "application/x-amz-json-1.1";
+
+    private static final long MAX_EVENT_AGE = TimeUnit.DAYS.toMillis(14);
+    private static final long MAX_EVENT_AHEAD = TimeUnit.HOURS.toMillis(2);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Map<String, LogStream>> logGroups = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private volatile Faults faultProfile = Faults.NONE;
+    private volatile long provisioningLatency;
+    private volatile BiConsumer<String, JsonNode> listener = (stream, event) -> { };
+
+    /**
+     * Starts server on a free local port.
+     * @param threads number of threads handling requests
+     */
+    LocalCloudWatchLogsServer(int threads) throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return endpoint URL for the client
+     */
+    String getEndpoint() {
+        return format("http://localhost:%d", server.getAddress().getPort());
+    }
+
+    void setFaults(Faults faults) {
+        this.faultProfile = faults;
+    }
+
+    /**
+     * @param provisioningLatency latency (in ms) added to {@code CreateLogGroup} and {@code CreateLogStream} requests
+     */
+    void setProvisioningLatency(long provisioningLatency) {
+        this.provisioningLatency = provisioningLatency;
+    }
+
+    /**
+     * Sets receiver of accepted events, called with log stream name and event with {@code timestamp} and
+     * {@code message} fields.
+     */
+    void setListener(BiConsumer<String, JsonNode> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return number of events accepted to the log stream
+     */
+    long getEventCount(String logGroup, String logStream) {
+        Map<String, LogStream> streams = logGroups.get(logGroup);
+        LogStream stream = streams == null ? null : streams.get(logStream);
+        return stream == null ? 0 : stream.events;
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    long getFaultCount() {
+        return faults.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = mapper.readTree(body);
+            }
+
+            if (target == null || !target.startsWith(TARGET_PREFIX) || request == null) {
+                respond(exchange, 400, error("SerializationException", "Malformed request"));
+                return;
+            }
+
+            switch (target.substring(TARGET_PREFIX.length())) {
+                case "CreateLogGroup":
+                    sleep(provisioningLatency);
+                    respond(exchange, createLogGroup(request));
+                    break;
+                case "CreateLogStream":
+                    sleep(provisioningLatency);
+                    respond(exchange, createLogStream(request));
+                    break;
+                case "PutLogEvents":
+                    putLogEvents(exchange, request);
+                    break;
+                default:
+                    respond(exchange, 400, error("UnknownOperationException", "Unsupported operation " + target));
+                    break;
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response createLogGroup(JsonNode request) {
+        String logGroup = request.path("logGroupName").asText();
+        if (logGroups.putIfAbsent(logGroup, new ConcurrentHashMap<>()) != null) {
+            return errorResponse("ResourceAlreadyExistsException", "The specified log group already exists");
+        }
+        return Response.ok(mapper.createObjectNode());
+    }
+
+    private Response createLogStream(JsonNode request) {
+        Map<String, LogStream> streams = logGroups.get(request.path("logGroupName").asText());
+        if (streams == null) {
+            return errorResponse("ResourceNotFoundException", "The specified log group does not exist.");
+        }
+        if (streams.putIfAbsent(request.path("logStreamName").asText(), new LogStream()) != null) {
+            return errorResponse("ResourceAlreadyExistsException", "The specified log stream already exists");
+        }
+        return Response.ok(mapper.createObjectNode());
+    }
+
+    private void putLogEvents(HttpExchange exchange, JsonNode request) throws IOException {
+        requests.incrementAndGet();
+        Faults faults = faultProfile;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        sleep(faults.latency);
+        if (random.nextDouble() < faults.throttleRate) {
+            this.faults.incrementAndGet();
+            respond(exchange, 400, error("ThrottlingException", "Rate exceeded"));
+            return;
+        }
+        if (random.nextDouble() < faults.errorRate) {
+            this.faults.incrementAndGet();
+            respond(exchange, 503, error("ServiceUnavailableException", "The service cannot complete the request."));
+            return;
+        }
+
+        Response response = putLogEvents(request);
+        if (random.nextDouble() < faults.resetRate) {
+            // request is processed, but the client never gets the response
+            this.faults.incrementAndGet();
+            return;
+        }
+        respond(exchange, response);
+    }
+
+    private static void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Response putLogEvents(JsonNode request) {
+        Map<String, LogStream> streams = logGroups.get(request.path("logGroupName").asText());
+        String logStreamName = request.path("logStreamName").asText();
+        LogStream stream = streams == null ? null : streams.get(logStreamName);
+        if (stream == null) {
+            return errorResponse("ResourceNotFoundException", "The specified log stream does not exist.");
+        }
+
+        JsonNode events = request.path("logEvents");
+        String validationError = validate(events);
+        if (validationError != null) {
+            return errorResponse("InvalidParameterException", validationError);
+        }
+
+        String token = request.hasNonNull("sequenceToken") ? request.get("sequenceToken").asText() : null;
+        synchronized (stream) {
+            int hash = events.hashCode();
+            if (stream.sequence > 0 && Objects.equals(stream.previousToken, token) && stream.previousHash == hash) {
+                ObjectNode error = error("DataAlreadyAcceptedException", "The given batch of log events has already "
+                        + "been accepted. The next batch can be sent with sequenceToken: " + stream.token);
+                error.put("expectedSequenceToken", stream.token);
+                return new Response(400, error);
+            }
+            if (stream.token != null && !stream.token.equals(token)) {
+                ObjectNode error = error("InvalidSequenceTokenException", "The given sequenceToken is invalid. "
+                        + "The next expected sequenceToken is: " + stream.token);
+                error.put("expectedSequenceToken", stream.token);
+                return new Response(400, error);
+            }
+
+            ObjectNode result = mapper.createObjectNode();
+            long now = System.currentTimeMillis();
+            int tooOld = -1;
+            int tooNew = -1;
+            for (int i = 0; i < events.size(); i++) {
+                JsonNode event = events.get(i);
+                long timestamp = event.path("timestamp").asLong();
+                if (timestamp < now - MAX_EVENT_AGE) {
+                    tooOld = i;
+                } else if (timestamp > now + MAX_EVENT_AHEAD) {
+                    tooNew = tooNew < 0 ? i : tooNew;
+                } else {
+                    stream.events++;
+                    listener.accept(logStreamName, event);
+                }
+            }
+            if (tooOld >= 0 || tooNew >= 0) {
+                ObjectNode rejected = result.putObject("rejectedLogEventsInfo");
+                if (tooOld >= 0) {
+                    rejected.put("tooOldLogEventEndIndex", tooOld + 1);
+                }
+                if (tooNew >= 0) {
+                    rejected.put("tooNewLogEventStartIndex", tooNew);
+                }
+            }
+
+            stream.previousToken = token;
+            stream.previousHash = hash;
+            stream.token = format("%056d", ++stream.sequence);
+            result.put("nextSequenceToken", stream.token);
+            return Response.ok(result);
+        }
+    }
+
+    /**
+     * Validates batch against {@code PutLogEvents} limits.
+     * @return error message or {@code null} if batch is valid
+     */
+    private static String validate(JsonNode events) {
+        if (!events.isArray() || events.size() == 0) {
+            return "logEvents must contain at least 1 event";
+        }
+        if (events.size() > CloudWatchLogsSink.MAX_BATCH_COUNT) {
+            return format("logEvents must contain at most %d events", CloudWatchLogsSink.MAX_BATCH_COUNT);
+        }
+
+        long bytes = 0;
+        long previous = Long.MIN_VALUE;
+        for (JsonNode event : events) {
+            long timestamp = event.path("timestamp").asLong();
+            if (timestamp < previous) {
+                return "Log events in a single PutLogEvents request must be in chronological order.";
+            }
+            previous = timestamp;
+
+            int messageBytes = event.path("message").asText().getBytes(StandardCharsets.UTF_8).length;
+            if (messageBytes == 0) {
+                return "Log event message must be non-empty";
+            }
+            if (messageBytes > CloudWatchLogsSink.MAX_EVENT_BYTES) {
+                return "Log event too large";
+            }
+            bytes += messageBytes + CloudWatchLogsSink.EVENT_OVERHEAD_BYTES;
+        }
+
+        if (bytes > CloudWatchLogsSink.MAX_BATCH_BYTES) {
+            return format("Upload too large: %d bytes exceeds limit of %d", bytes, CloudWatchLogsSink.MAX_BATCH_BYTES);
+        }
+        if (previous - events.get(0).path("timestamp").asLong() > CloudWatchLogsSink.MAX_BATCH_TIME_SPAN) {
+            return "The batch of log events in a single PutLogEvents request cannot span more than 24 hours.";
+        }
+        return null;
+    }
+
+    private ObjectNode error(String type, String message) {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("__type", type);
+        error.put("message", message);
+        return error;
+    }
+
+    private Response errorResponse(String type, String message) {
+        return new Response(400, error(type, message));
+    }
+
+    private void respond(HttpExchange exchange, Response response) throws IOException {
+        respond(exchange, response.status, response.body);
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.getResponseHeaders().set("x-amzn-RequestId", Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Faults injected into {@code PutLogEvents} requests.
+     */
+    static final class Faults {
+        static final Faults NONE = new Faults("none", 0, 0, 0, 0);
+
+        private final String name;
+        private final long latency;
+        private final double throttleRate;
+        private final double errorRate;
+        private final double resetRate;
+
+        /**
+         * @param name profile name for reports
+         * @param latency added latency of each request, in ms
+         * @param throttleRate fraction of requests rejected with {@code ThrottlingException}
+         * @param errorRate fraction of requests rejected with HTTP 503
+         * @param resetRate fraction of requests processed, but closed without response
+         */
+        Faults(String name, long latency, double throttleRate, double errorRate, double resetRate) {
+            this.name = name;
+            this.latency = latency;
+            this.throttleRate = throttleRate;
+            this.errorRate = errorRate;
+            this.resetRate = resetRate;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class LogStream {
+        private volatile long events;
+        private long sequence;
+        private String token;
+        private String previousToken;
+        private int previousHash;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final JsonNode body;
+
+        private Response(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private static Response ok(JsonNode body) {
+            return new Response(200, body);
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.status.Status;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.logs.AWSLogsAsyncClient;
+import com.amazonaws.services.logs.AWSLogsClient;
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.InvalidParameterException;
+import com.amazonaws.services.logs.model.InvalidSequenceTokenException;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class LocalCloudWatchLogsServerTest {
+    private static final String LOG_GROUP = "group";
+    private static final String LOG_STREAM = "stream";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalCloudWatchLogsServer server;
+    private AWSLogsClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalCloudWatchLogsServer(2);
+        client = new AWSLogsClient(new BasicAWSCredentials("test", "test"),
+                new ClientConfiguration().withMaxErrorRetry(0));
+        client.setEndpoint(server.getEndpoint());
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testSequenceTokens() {
+        //Arrange
+        client.createLogGroup(new CreateLogGroupRequest(LOG_GROUP));
+        client.createLogStream(new CreateLogStreamRequest(LOG_GROUP, LOG_STREAM));
+        long now = System.currentTimeMillis();
+        PutLogEventsRequest first = new PutLogEventsRequest(LOG_GROUP, LOG_STREAM,
+                Arrays.asList(event(now, "first"), event(now + 1, "second")));
+
+        //Act
+        PutLogEventsResult result = client.putLogEvents(first);
+        Throwable repeated = catchThrowable(() -> client.putLogEvents(first));
+        Throwable invalid = catchThrowable(() -> client.putLogEvents(new PutLogEventsRequest(LOG_GROUP, LOG_STREAM,
+                Arrays.asList(event(now, "third"))).withSequenceToken("invalid")));
+
+        //Assert
+        assertThat(result.getNextSequenceToken()).isNotEmpty();
+        assertThat(repeated).isInstanceOf(DataAlreadyAcceptedException.class);
+        assertThat(((DataAlreadyAcceptedException) repeated).getExpectedSequenceToken())
+                .isEqualTo(result.getNextSequenceToken());
+        assertThat(invalid).isInstanceOf(InvalidSequenceTokenException.class);
+        assertThat(((InvalidSequenceTokenException) invalid).getExpectedSequenceToken())
+                .isEqualTo(result.getNextSequenceToken());
+        assertThat(server.getEventCount(LOG_GROUP, LOG_STREAM)).isEqualTo(2);
+    }
+
+    @Test
+    public void testLimits() {
+        //Arrange
+        client.createLogGroup(new CreateLogGroupRequest(LOG_GROUP));
+        client.createLogStream(new CreateLogStreamRequest(LOG_GROUP, LOG_STREAM));
+        long now = System.currentTimeMillis();
+
+        //Act
+        Throwable unordered = catchThrowable(() -> client.putLogEvents(new PutLogEventsRequest(LOG_GROUP, LOG_STREAM,
+                Arrays.asList(event(now, "second"), event(now - 1, "first")))));
+        PutLogEventsResult rejected = client.putLogEvents(new PutLogEventsRequest(LOG_GROUP, LOG_STREAM,
+                Arrays.asList(event(now, "current"), event(now + TimeUnit.HOURS.toMillis(3), "future"))));
+
+        //Assert
+        assertThat(unordered).isInstanceOf(InvalidParameterException.class);
+        assertThat(rejected.getRejectedLogEventsInfo().getTooNewLogEventStartIndex()).isEqualTo(1);
+        assertThat(server.getEventCount(LOG_GROUP, LOG_STREAM)).isEqualTo(1);
+    }
+
+    @Test
+    public void testAppenderDeliversEventsThroughFaults() throws Exception {
+        //Arrange
+        LoggerContext context = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setRegion("us-east-1");
+        appender.setEndpoint(server.getEndpoint());
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        appender.start();
+        server.setFaults(new LocalCloudWatchLogsServer.Faults("errors", 0, 0.2, 0.2, 0));
+
+        //Act
+        for (int i = 0; i < 1000; i++) {
+            appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                    context.getLogger("test"), Level.INFO, "event {}", null, new Object[]{i}));
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (server.getEventCount(LOG_GROUP, LOG_STREAM) < 1000 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        appender.stop();
+
+        //Assert
+        assertThat(server.getEventCount(LOG_GROUP, LOG_STREAM)).isEqualTo(1000);
+        assertThat(appender.getMetrics().getSentEvents()).isEqualTo(1000);
+    }
+
+    @Test
+    public void testAppenderNeitherReconfiguresNorShutsDownProvidedClient() throws Exception {
+        //Arrange
+        LoggerContext context = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setRegion("eu-west-1");
+        appender.setEndpoint("http://localhost:1");
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        appender.start();
+
+        //Act
+        appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(), context.getLogger("test"),
+                Level.INFO, "event", null, null));
+        appender.stop();
+        client.createLogStream(new CreateLogStreamRequest(LOG_GROUP, "after-stop"));
+
+        //Assert
+        assertThat(server.getEventCount(LOG_GROUP, LOG_STREAM)).isEqualTo(1);
+        assertThat(server.getEventCount(LOG_GROUP, "after-stop")).isZero();
+    }
+
+    @Test
+    public void testAppenderRoutesEventsToDestinations() throws Exception {
+        //Arrange
+        LoggerContext context = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        RoutingRule audit = new RoutingRule();
+        audit.setLogger("audit");
+        audit.setLogGroup("audit-group");
+        RoutingRule errors = new RoutingRule();
+        errors.setLevel("ERROR");
+        errors.setLogStream("errors");
+
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setRegion("us-east-1");
+        appender.setEndpoint(server.getEndpoint());
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        appender.addRoute(audit);
+        appender.addRoute(errors);
+        appender.start();
+
+        //Act
+        for (String logger : Arrays.asList("audit.trail", "audit", "app")) {
+            for (Level level : Arrays.asList(Level.INFO, Level.ERROR)) {
+                appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                        context.getLogger(logger), level, "event", null, null));
+            }
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (appender.getMetrics().getSentEvents() < 6 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        appender.stop();
+
+        //Assert
+        assertThat(server.getEventCount("audit-group", LOG_STREAM)).isEqualTo(4);
+        assertThat(server.getEventCount(LOG_GROUP, "errors")).isEqualTo(1);
+        assertThat(server.getEventCount(LOG_GROUP, LOG_STREAM)).isEqualTo(1);
+    }
+
+    @Test
+    public void testAppenderStartsWithoutWaitingForProvisioning() throws Exception {
+        //Arrange
+        server.setProvisioningLatency(1000);
+        LoggerContext context = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setRegion("us-east-1");
+        appender.setEndpoint(server.getEndpoint());
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+
+        //Act
+        long start = System.currentTimeMillis();
+        appender.start();
+        long startTime = System.currentTimeMillis() - start;
+        appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(), context.getLogger("test"),
+                Level.INFO, "buffered", null, null));
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (server.getEventCount(LOG_GROUP, LOG_STREAM) < 1 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        appender.stop();
+
+        //Assert
+        assertThat(startTime).isLessThan(1000);
+        assertThat(server.getEventCount(LOG_GROUP, LOG_STREAM)).isEqualTo(1);
+    }
+
+    @Test
+    public void testAppenderFlushesHigherPriorityEventsUntilDeadlineOnStop() throws Exception {
+        //Arrange
+        server.setProvisioningLatency(250);
+        server.setFaults(new LocalCloudWatchLogsServer.Faults("slow", 300, 0, 0, 0));
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        server.setListener((logStream, event) -> delivered.add(event.path("message").asText().substring(0, 5)));
+        LoggerContext context = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setRegion("us-east-1");
+        appender.setEndpoint(server.getEndpoint());
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        appender.setMaxFlushTime(1800);
+        appender.start();
+
+        // events of 200 KB fill a batch by five, so the backlog takes seven slow requests
+        char[] padding = new char[200 * 1024];
+        Arrays.fill(padding, '.');
+        for (int i = 0; i < 35; i++) {
+            Level level = i % 7 == 6 ? Level.ERROR : Level.INFO;
+            appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                    context.getLogger("test"), level, "{} {}", null, new Object[]{level, new String(padding)}));
+        }
+
+        //Act
+        long start = System.currentTimeMillis();
+        appender.stop();
+        long stopTime = System.currentTimeMillis() - start;
+
+        //Assert
+        long sent = appender.getMetrics().getSentEvents();
+        assertThat(stopTime).isLessThan(1800 + 1000);
+        assertThat(sent).isBetween(5L, 34L);
+        assertThat(sent + appender.getMetrics().getDroppedEvents()).isEqualTo(35);
+        assertThat(delivered).hasSize((int) sent).startsWith("ERROR", "ERROR", "ERROR", "ERROR", "ERROR");
+        assertThat(context.getStatusManager().getCopyOfStatusList().stream().map(Status::getMessage)
+                .anyMatch(message -> message.contains(String.format("flushed %d events", sent)))).isTrue();
+    }
+
+    @Test
+    public void testAppenderQueuesEventsInDirectMemory() throws Exception {
+        //Arrange
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        server.setListener((logStream, event) -> delivered.add(event.path("message").asText()));
+        LoggerContext context = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setRegion("us-east-1");
+        appender.setEndpoint(server.getEndpoint());
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        appender.setQueueBytes(1024 * 1024);
+        appender.start();
+
+        //Act
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String message = "\u00e9v\u00e9nement " + i + " " + new String(new char[i]).replace('\0', '\u263a');
+            messages.add(message);
+            appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                    context.getLogger("test"), Level.INFO, message, null, null));
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (appender.getMetrics().getSentEvents() < 500 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        long queuedBytes = appender.getQueuedBytes();
+        appender.stop();
+
+        //Assert
+        assertThat(delivered).containsExactlyElementsOf(messages);
+        assertThat(queuedBytes).isZero();
+    }
+
+    @Test
+    public void testAppenderSpillsLowerPriorityEventsInPlaceOfHigherPriorityOnes() throws Exception {
+        //Arrange
+        server.setProvisioningLatency(1000);
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        server.setListener((logStream, event) -> delivered.add(event.path("message").asText()));
+        LoggerContext context = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg");
+        layout.start();
+
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setAwsLogsClient(client);
+        appender.setLayout(layout);
+        // lanes of 4 high, 8 normal and 4 low priority events
+        appender.setQueueCapacity(16);
+        appender.setSpillDirectory(folder.getRoot().getPath());
+        appender.start();
+
+        //Act
+        // queue fills up while the log stream is being created: 4 errors take the free space of the low priority
+        // lane, and the last 4 take the place of the oldest info events, which are spilled
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Level level = i < 8 ? Level.INFO : Level.ERROR;
+            String message = level + " " + i;
+            messages.add(message);
+            appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                    context.getLogger("test"), level, message, null, null));
+        }
+        long spilled = appender.getMetrics().getSpilledEvents();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (appender.getMetrics().getSentEvents() < 20 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        appender.stop();
+
+        //Assert
+        assertThat(spilled).isEqualTo(4);
+        assertThat(appender.getMetrics().getDroppedEvents()).isZero();
+        assertThat(delivered).hasSize(20).containsOnlyElementsOf(messages);
+    }
+
+    @Test
+    public void testAppenderReportsDiscardedEventsByReason() throws Exception {
+        //Arrange
+        server.setProvisioningLatency(1000);
+        LoggerContext context = new LoggerContext();
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setAwsLogsClient(client);
+        // lanes of 2 high, 4 normal and 2 low priority events
+        appender.setQueueCapacity(8);
+        appender.start();
+
+        //Act
+        // queue fills up while the log stream is being created: the third error takes the place of a debug event,
+        // and the next debug events are discarded
+        for (Level level : Arrays.asList(Level.DEBUG, Level.DEBUG, Level.INFO, Level.INFO, Level.INFO, Level.INFO,
+                Level.ERROR, Level.ERROR, Level.ERROR, Level.DEBUG, Level.DEBUG)) {
+            appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                    context.getLogger("test"), level, level.toString(), null, null));
+        }
+        appender.stop();
+
+        //Assert
+        assertThat(context.getStatusManager().getCopyOfStatusList()).extracting(Status::getMessage).contains(
+                "No space available in internal queue, lower priority logging events are discarded: "
+                        + "1 events were discarded since the previous report",
+                "No space available in internal queue, logging events are discarded: "
+                        + "2 events were discarded since the previous report");
+    }
+
+    @Test
+    public void testAppenderCountsEventsRejectedByFailFastPolicy() throws Exception {
+        //Arrange
+        server.setProvisioningLatency(1000);
+        LoggerContext context = new LoggerContext();
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setAwsLogsClient(client);
+        // lanes of 2 high, 4 normal and 2 low priority events
+        appender.setQueueCapacity(8);
+        appender.setOverflowPolicy(OverflowPolicy.FAIL_FAST);
+        appender.start();
+
+        //Act
+        // queue fills up while the log stream is being created: events take the normal and the free low priority
+        // lane, and the last two are rejected
+        for (int i = 0; i < 8; i++) {
+            appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                    context.getLogger("test"), Level.INFO, "event " + i, null, null));
+        }
+        long rejected = appender.getMetrics().getRejectedEvents();
+        appender.stop();
+
+        //Assert
+        assertThat(rejected).isEqualTo(2);
+        assertThat(appender.getMetrics().getDroppedEvents()).isEqualTo(2);
+        assertThat(appender.getMetrics().getSentEvents()).isEqualTo(6);
+    }
+
+    @Test
+    public void testAppenderPipelinesRequestsOfStreamInTokenOrder() throws Exception {
+        //Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AWSLogsAsyncClient asyncClient = new AWSLogsAsyncClient(new BasicAWSCredentials("test", "test"),
+                new ClientConfiguration().withMaxErrorRetry(0), executor);
+        asyncClient.setEndpoint(server.getEndpoint());
+        LoggerContext context = new LoggerContext();
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setAwsLogsClient(asyncClient);
+        appender.setMaxInFlightRequests(4);
+        appender.setMaxSendRate(100);
+        appender.setQueueCapacity(1024);
+        appender.start();
+        char[] payload = new char[100_000];
+        Arrays.fill(payload, 'x');
+
+        //Act
+        for (int i = 0; i < 100; i++) {
+            appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(),
+                    context.getLogger("test"), Level.INFO, i + new String(payload), null, null));
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(20);
+        while (server.getEventCount(LOG_GROUP, LOG_STREAM) < 100 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        appender.stop();
+        asyncClient.shutdown();
+
+        //Assert
+        assertThat(server.getEventCount(LOG_GROUP, LOG_STREAM)).isEqualTo(100);
+        assertThat(appender.getMetrics().getSentEvents()).isEqualTo(100);
+        assertThat(appender.getMetrics().getDroppedEvents()).isZero();
+    }
+
+    @Test
+    public void testAppenderSpillsDelayedRequestsOnStop() throws Exception {
+        //Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AWSLogsAsyncClient asyncClient = new AWSLogsAsyncClient(new BasicAWSCredentials("test", "test"),
+                new ClientConfiguration().withMaxErrorRetry(0), executor);
+        asyncClient.setEndpoint(server.getEndpoint());
+        LoggerContext context = new LoggerContext();
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender();
+        appender.setContext(context);
+        appender.setLogGroup(LOG_GROUP);
+        appender.setLogStream(LOG_STREAM);
+        appender.setAwsLogsClient(asyncClient);
+        appender.setMaxInFlightRequests(2);
+        // the second request waits two seconds for its turn, outlasting flush deadline
+        appender.setMaxSendRate(0.5);
+        appender.setMaxBatchTime(100);
+        appender.setMaxFlushTime(300);
+        appender.setSpillDirectory(folder.getRoot().getPath());
+        appender.start();
+        appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(), context.getLogger("test"),
+                Level.INFO, "sent", null, null));
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (appender.getMetrics().getSentEvents() < 1 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        appender.doAppend(new LoggingEvent(LocalCloudWatchLogsServerTest.class.getName(), context.getLogger("test"),
+                Level.INFO, "delayed", null, null));
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        //Act
+        long start = System.currentTimeMillis();
+        appender.stop();
+        long stopTime = System.currentTimeMillis() - start;
+        asyncClient.shutdown();
+
+        //Assert
+        assertThat(stopTime).isLessThan(1000);
+        assertThat(appender.getMetrics().getSentEvents()).isEqualTo(1);
+        assertThat(appender.getMetrics().getSpilledEvents()).isEqualTo(1);
+        assertThat(appender.getMetrics().getDroppedEvents()).isZero();
+    }
+
+    private static InputLogEvent event(long timestamp, String message) {
+        return new InputLogEvent().withTimestamp(timestamp).withMessage(message);
+    }
+}
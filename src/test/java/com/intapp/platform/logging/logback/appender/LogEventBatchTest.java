@@ -0,0 +1,166 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.google.common.base.Strings;
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogEventBatchTest {
+
+    @Test
+    public void testUtf8Length() {
+        //Arrange
+        String message = "ascii, \u043a\u0438\u0440\u0438\u043b\u043b\u0438\u0446\u0430, \u4e2d\u6587, \uD83D\uDE00";
+
+        //Act
+        int length = LogEventBatch.utf8Length(message);
+
+        //Assert
+        assertThat(length).isEqualTo(message.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void testSplitOnBatchBytes() {
+        //Arrange
+        LogEventBatch batch = new LogEventBatch();
+        String message = Strings.repeat("x", CloudWatchLogsSink.MAX_EVENT_BYTES);
+
+        //Act
+        int added = 0;
+        while (batch.add(event(0, message))) {
+            added++;
+        }
+
+        //Assert
+        assertThat(added).isEqualTo(4);
+        assertThat(batch.getBytes()).isLessThanOrEqualTo(CloudWatchLogsSink.MAX_BATCH_BYTES);
+    }
+
+    @Test
+    public void testSplitOnBatchCount() {
+        //Arrange
+        LogEventBatch batch = new LogEventBatch();
+
+        //Act
+        int added = 0;
+        while (batch.add(event(0, "x"))) {
+            added++;
+        }
+
+        //Assert
+        assertThat(added).isEqualTo(CloudWatchLogsSink.MAX_BATCH_COUNT);
+        assertThat(batch.isFull()).isTrue();
+    }
+
+    @Test
+    public void testSplitOnTimeSpan() {
+        //Arrange
+        LogEventBatch batch = new LogEventBatch();
+        batch.add(event(CloudWatchLogsSink.MAX_BATCH_TIME_SPAN, "x"));
+
+        //Act & Assert
+        assertThat(batch.add(event(0, "x"))).isTrue();
+        assertThat(batch.add(event(CloudWatchLogsSink.MAX_BATCH_TIME_SPAN + 1, "x"))).isFalse();
+    }
+
+    @Test
+    public void testDrainSortsByTimestamp() {
+        //Arrange
+        LogEventBatch batch = new LogEventBatch();
+        batch.add(event(3, "c"));
+        batch.add(event(1, "a"));
+        batch.add(event(2, "b"));
+
+        //Act
+        List<InputLogEvent> events = batch.drain();
+
+        //Assert
+        assertThat(events).extracting(InputLogEvent::getMessage).containsExactly("a", "b", "c");
+        assertThat(batch.isEmpty()).isTrue();
+        assertThat(batch.getBytes()).isZero();
+    }
+
+    @Test
+    public void testDrainToReusesEventsAndKeepsOrderOfEqualTimestamps() {
+        //Arrange
+        LogEventBatch batch = new LogEventBatch();
+        Random random = new Random(42);
+        List<InputLogEvent> events = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            batch.add(random.nextInt(50), Integer.toString(i), 4);
+        }
+        batch.drainTo(events);
+        InputLogEvent reused = events.get(0);
+        for (int i = 0; i < 2000; i++) {
+            batch.add(random.nextInt(50), Integer.toString(i), 4);
+        }
+
+        //Act
+        batch.drainTo(events);
+
+        //Assert
+        assertThat(events).hasSize(2000);
+        assertThat(events.get(0)).isSameAs(reused);
+        for (int i = 1; i < events.size(); i++) {
+            InputLogEvent previous = events.get(i - 1);
+            InputLogEvent current = events.get(i);
+            assertThat(current.getTimestamp()).isGreaterThanOrEqualTo(previous.getTimestamp());
+            if (current.getTimestamp().equals(previous.getTimestamp())) {
+                assertThat(Integer.parseInt(current.getMessage())).isGreaterThan(Integer.parseInt(previous.getMessage()));
+            }
+        }
+    }
+
+    @Test
+    public void testTruncateKeepsSurrogatePairs() {
+        //Arrange
+        String message = "x" + Strings.repeat("\uD83D\uDE00", CloudWatchLogsSink.MAX_EVENT_BYTES / 4 + 1);
+        LogEntry entry = LogEntry.formatted(0, message);
+        entry.format(null);
+
+        //Act
+        boolean truncated = entry.truncate(CloudWatchLogsSink.MAX_EVENT_BYTES);
+
+        //Assert
+        String truncatedMessage = entry.toInputLogEvent().getMessage();
+        assertThat(truncated).isTrue();
+        assertThat(entry.getMessageBytes()).isLessThanOrEqualTo(CloudWatchLogsSink.MAX_EVENT_BYTES);
+        assertThat(Character.isHighSurrogate(truncatedMessage.charAt(truncatedMessage.length() - 1))).isFalse();
+    }
+
+    @Test
+    public void testSplitOversizedEntryIntoMarkedParts() {
+        //Arrange
+        String message = "x" + Strings.repeat("\uD83D\uDE00", CloudWatchLogsSink.MAX_EVENT_BYTES / 2);
+        LogEntry entry = LogEntry.formatted(42, message);
+        entry.format(null);
+
+        //Act
+        List<LogEntry> parts = entry.split(CloudWatchLogsSink.MAX_EVENT_BYTES);
+
+        //Assert
+        assertThat(parts).hasSize(3);
+        StringBuilder reassembled = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            InputLogEvent part = parts.get(i).toInputLogEvent();
+            String marker = " [part " + (i + 1) + "/3]";
+            assertThat(part.getTimestamp()).isEqualTo(42);
+            assertThat(part.getMessage()).endsWith(marker);
+            assertThat(parts.get(i).getMessageBytes()).isEqualTo(part.getMessage().getBytes(StandardCharsets.UTF_8).length)
+                    .isLessThanOrEqualTo(CloudWatchLogsSink.MAX_EVENT_BYTES);
+            reassembled.append(part.getMessage(), 0, part.getMessage().length() - marker.length());
+        }
+        assertThat(reassembled.toString()).isEqualTo(message);
+    }
+
+    private static InputLogEvent event(long timestamp, String message) {
+        return new InputLogEvent().withTimestamp(timestamp).withMessage(message);
+    }
+}
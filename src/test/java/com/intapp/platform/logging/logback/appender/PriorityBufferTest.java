@@ -0,0 +1,119 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriorityBufferTest {
+
+    @Test
+    public void testLevelPriorities() {
+        //Assert
+        assertThat(Priority.of(Level.ERROR)).isEqualTo(Priority.HIGH);
+        assertThat(Priority.of(Level.WARN)).isEqualTo(Priority.HIGH);
+        assertThat(Priority.of(Level.INFO)).isEqualTo(Priority.NORMAL);
+        assertThat(Priority.of(Level.DEBUG)).isEqualTo(Priority.LOW);
+        assertThat(Priority.of(Level.TRACE)).isEqualTo(Priority.LOW);
+    }
+
+    @Test
+    public void testHigherPriorityLanesArePolledFirst() throws InterruptedException {
+        //Arrange
+        PriorityBuffer<String> buffer = new PriorityBuffer<>(2, 2, 2, PriorityBufferTest::priorityOf);
+        buffer.offer("debug", Priority.LOW);
+        buffer.offer("info", Priority.NORMAL);
+        buffer.offer("error", Priority.HIGH);
+
+        //Act
+        List<String> polled = new ArrayList<>();
+        String element;
+        while ((element = buffer.poll(10, TimeUnit.MILLISECONDS)) != null) {
+            polled.add(element);
+        }
+
+        //Assert
+        assertThat(polled).containsExactly("error", "info", "debug");
+    }
+
+    @Test
+    public void testLowerPriorityElementsAreShedFirst() {
+        //Arrange
+        PriorityBuffer<String> buffer = new PriorityBuffer<>(2, 2, 2, PriorityBufferTest::priorityOf);
+        buffer.offer("error-0", Priority.HIGH);
+        buffer.offer("error-1", Priority.HIGH);
+        buffer.offer("info-0", Priority.NORMAL);
+        buffer.offer("info-1", Priority.NORMAL);
+        buffer.offer("debug-0", Priority.LOW);
+        buffer.offer("debug-1", Priority.LOW);
+        List<String> evicted = new ArrayList<>();
+
+        //Act
+        boolean errorOffered = buffer.offer("error-2", Priority.HIGH);
+        boolean errorShed = buffer.offerLower("error-2", Priority.HIGH, evicted::add);
+        boolean debugShed = buffer.offerLower("debug-2", Priority.LOW, evicted::add);
+
+        //Assert
+        assertThat(errorOffered).isFalse();
+        assertThat(errorShed).isTrue();
+        assertThat(debugShed).isFalse();
+        assertThat(evicted).containsExactly("debug-0");
+        assertThat(buffer.size()).isEqualTo(6);
+        assertThat(buffer.poll(Priority.LOW)).isEqualTo("debug-1");
+        assertThat(buffer.poll(Priority.LOW)).isEqualTo("error-2");
+    }
+
+    @Test
+    public void testElementsInFreeSpaceOfLowerLaneAreNotShedForEqualPriority() {
+        //Arrange
+        PriorityBuffer<String> buffer = new PriorityBuffer<>(2, 2, 2, PriorityBufferTest::priorityOf);
+        buffer.offer("info-0", Priority.NORMAL);
+        buffer.offer("info-1", Priority.NORMAL);
+        buffer.offerLower("info-2", Priority.NORMAL, element -> { });
+        buffer.offerLower("info-3", Priority.NORMAL, element -> { });
+        List<String> evicted = new ArrayList<>();
+
+        //Act
+        boolean infoShed = buffer.offerLower("info-4", Priority.NORMAL, evicted::add);
+        boolean errorShed = buffer.offerLower("error-0", Priority.HIGH, evicted::add);
+
+        //Assert
+        assertThat(infoShed).isFalse();
+        assertThat(errorShed).isTrue();
+        assertThat(evicted).containsExactly("info-2");
+        assertThat(buffer.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void testLowerPriorityElementIsShedBehindHigherPriorityOnes() {
+        //Arrange
+        PriorityBuffer<String> buffer = new PriorityBuffer<>(2, 2, 2, PriorityBufferTest::priorityOf);
+        buffer.offer("error-0", Priority.HIGH);
+        buffer.offer("error-1", Priority.HIGH);
+        buffer.offerLower("error-2", Priority.HIGH, element -> { });
+        buffer.offer("debug-0", Priority.LOW);
+        buffer.offer("info-0", Priority.NORMAL);
+        buffer.offer("info-1", Priority.NORMAL);
+        List<String> evicted = new ArrayList<>();
+
+        //Act
+        boolean infoShed = buffer.offerLower("info-2", Priority.NORMAL, evicted::add);
+
+        //Assert
+        assertThat(infoShed).isTrue();
+        assertThat(evicted).containsExactly("debug-0");
+        assertThat(buffer.poll(Priority.LOW)).isEqualTo("error-2");
+        assertThat(buffer.poll(Priority.LOW)).isEqualTo("info-2");
+    }
+
+    private static Priority priorityOf(String element) {
+        if (element.startsWith("error")) {
+            return Priority.HIGH;
+        }
+        return element.startsWith("info") ? Priority.NORMAL : Priority.LOW;
+    }
+}
@@ -0,0 +1,64 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testRetryableFailures() {
+        //Arrange
+        AmazonServiceException throttling = serviceException("ThrottlingException", 400);
+        AmazonServiceException unavailable = serviceException("ServiceUnavailableException", 503);
+        AmazonServiceException invalid = serviceException("InvalidParameterException", 400);
+
+        //Act & Assert
+        assertThat(RetryPolicy.isThrottling(throttling)).isTrue();
+        assertThat(RetryPolicy.isRetryable(throttling)).isTrue();
+        assertThat(RetryPolicy.isRetryable(unavailable)).isTrue();
+        assertThat(RetryPolicy.isRetryable(invalid)).isFalse();
+        assertThat(RetryPolicy.isRetryable(new AmazonClientException("Connection reset"))).isTrue();
+    }
+
+    @Test
+    public void testRetryBudgetAndMaxRetries() {
+        //Arrange
+        RetryPolicy policy = new RetryPolicy(100, 10, 1000);
+        AmazonServiceException unavailable = serviceException("ServiceUnavailableException", 503);
+
+        //Act
+        int retries = 0;
+        while (policy.shouldRetry(unavailable, 0)) {
+            retries++;
+        }
+
+        //Assert
+        assertThat(retries).isEqualTo(10);
+        for (int i = 0; i < 10; i++) {
+            policy.onSuccess();
+        }
+        assertThat(policy.shouldRetry(unavailable, 0)).isTrue();
+        assertThat(new RetryPolicy(2, 10, 1000).shouldRetry(unavailable, 2)).isFalse();
+    }
+
+    @Test
+    public void testDelayIsBounded() {
+        //Arrange
+        RetryPolicy policy = new RetryPolicy(100, 10, 1000);
+
+        //Act & Assert
+        for (int retries = 0; retries < 64; retries++) {
+            assertThat(policy.getDelay(retries)).isBetween(0L, Math.min(1000L, 10L << Math.min(retries, 20)));
+        }
+    }
+
+    private static AmazonServiceException serviceException(String errorCode, int statusCode) {
+        AmazonServiceException ex = new AmazonServiceException(errorCode);
+        ex.setErrorCode(errorCode);
+        ex.setStatusCode(statusCode);
+        return ex;
+    }
+}
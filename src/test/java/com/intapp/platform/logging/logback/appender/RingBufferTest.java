@@ -0,0 +1,91 @@
+package com.intapp.platform.logging.logback.appender;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RingBufferTest {
+
+    @Test
+    public void testFifoOrderAndCapacity() {
+        //Arrange
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+
+        //Act
+        for (int i = 0; i < buffer.capacity(); i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+
+        //Assert
+        assertThat(buffer.capacity()).isEqualTo(4);
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+        for (int i = 0; i < buffer.capacity(); i++) {
+            assertThat(buffer.poll()).isEqualTo(i);
+        }
+        assertThat(buffer.poll()).isNull();
+    }
+
+    @Test
+    public void testBoundedWaitOnFullBuffer() throws InterruptedException {
+        //Arrange
+        RingBuffer<Integer> buffer = new RingBuffer<>(1);
+        buffer.offer(0);
+        buffer.offer(1);
+
+        //Act
+        long start = System.nanoTime();
+        boolean offered = buffer.offer(2, 20, TimeUnit.MILLISECONDS);
+
+        //Assert
+        assertThat(offered).isFalse();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        //Arrange
+        int producers = 4;
+        int perProducer = 10_000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch latch = new CountDownLatch(producers);
+
+        //Act
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            executor.execute(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        buffer.offer(base + i, 1, TimeUnit.SECONDS);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        Set<Integer> received = new HashSet<>();
+        while (received.size() < producers * perProducer) {
+            Integer element = buffer.poll(1, TimeUnit.SECONDS);
+            if (element == null) {
+                break;
+            }
+            received.add(element);
+        }
+        latch.await(1, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        //Assert
+        assertThat(received).hasSize(producers * perProducer);
+    }
+}
@@ -0,0 +1,50 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RoutingRuleTest {
+    private final LoggerContext context = new LoggerContext();
+
+    @Test
+    public void testLoggerMatchesDescendants() {
+        //Arrange
+        RoutingRule rule = new RoutingRule();
+        rule.setLogger("com.acme.audit");
+
+        //Assert
+        assertThat(rule.matchesLogger("com.acme.audit")).isTrue();
+        assertThat(rule.matchesLogger("com.acme.audit.Trail")).isTrue();
+        assertThat(rule.matchesLogger("com.acme.auditor")).isFalse();
+        assertThat(rule.matchesLogger("com.acme")).isFalse();
+    }
+
+    @Test
+    public void testLevelAndMdcConditions() {
+        //Arrange
+        RoutingRule rule = new RoutingRule();
+        rule.setLevel("WARN");
+        rule.setMdcKey("tenant");
+        rule.setMdcValue("acme");
+
+        //Assert
+        assertThat(rule.matches(event(Level.ERROR, "acme"))).isTrue();
+        assertThat(rule.matches(event(Level.INFO, "acme"))).isFalse();
+        assertThat(rule.matches(event(Level.ERROR, "other"))).isFalse();
+        assertThat(rule.matches(event(Level.ERROR, null))).isFalse();
+    }
+
+    private LoggingEvent event(Level level, String tenant) {
+        LoggingEvent event = new LoggingEvent(RoutingRuleTest.class.getName(), context.getLogger("test"), level,
+                "message", null, null);
+        event.setMDCPropertyMap(tenant == null
+                ? Collections.emptyMap() : Collections.singletonMap("tenant", tenant));
+        return event;
+    }
+}
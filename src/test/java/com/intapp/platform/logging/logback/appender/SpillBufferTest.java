@@ -0,0 +1,180 @@
+package com.intapp.platform.logging.logback.appender;
+
+import com.intapp.platform.logging.logback.sink.CloudWatchLogsSink;
+import com.intapp.platform.logging.logback.sink.SinkLimits;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpillBufferTest {
+    private static final int SEGMENT_SIZE = 512 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadCommitAndRollback() throws IOException {
+        //Arrange
+        try (SpillBuffer buffer = new SpillBuffer(folder.getRoot(), SEGMENT_SIZE, 2)) {
+            buffer.write(1, "first");
+            buffer.write(2, "second");
+
+            //Act & Assert
+            assertThat(buffer.read(1, CloudWatchLogsSink.MAX_BATCH_BYTES)).extracting(LogEntry::getMessage)
+                    .containsExactly("first");
+            buffer.rollback();
+            assertThat(buffer.read(10, CloudWatchLogsSink.MAX_BATCH_BYTES)).extracting(LogEntry::getMessage)
+                    .containsExactly("first", "second");
+            buffer.commit();
+            assertThat(buffer.isEmpty()).isTrue();
+            assertThat(buffer.read(10, CloudWatchLogsSink.MAX_BATCH_BYTES)).isEmpty();
+        }
+    }
+
+    @Test
+    public void testRecoveryAfterReopen() throws IOException {
+        //Arrange
+        File directory = folder.getRoot();
+        try (SpillBuffer buffer = new SpillBuffer(directory, SEGMENT_SIZE, 2)) {
+            buffer.write(1, "sent");
+            buffer.write(2, "unsent");
+            buffer.read(1, CloudWatchLogsSink.MAX_BATCH_BYTES);
+            buffer.commit();
+        }
+
+        //Act
+        try (SpillBuffer buffer = new SpillBuffer(directory, SEGMENT_SIZE, 2)) {
+            List<LogEntry> entries = buffer.read(10, CloudWatchLogsSink.MAX_BATCH_BYTES);
+
+            //Assert
+            assertThat(entries).extracting(LogEntry::getMessage).containsExactly("unsent");
+            assertThat(entries.get(0).getTimestamp()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testRecoveryAfterEmptyMessage() throws IOException {
+        //Arrange
+        File directory = folder.getRoot();
+        try (SpillBuffer buffer = new SpillBuffer(directory, SEGMENT_SIZE, 2)) {
+            buffer.write(1, "first");
+            buffer.write(2, "");
+            buffer.write(3, "third");
+        }
+
+        //Act
+        try (SpillBuffer buffer = new SpillBuffer(directory, SEGMENT_SIZE, 2)) {
+            List<LogEntry> entries = buffer.read(10, CloudWatchLogsSink.MAX_BATCH_BYTES);
+
+            //Assert
+            assertThat(entries).extracting(LogEntry::getMessage).containsExactly("first", "", "third");
+        }
+    }
+
+    @Test
+    public void testRecoveryStopsAtCorruptedRecord() throws IOException {
+        //Arrange
+        File directory = folder.getRoot();
+        try (SpillBuffer buffer = new SpillBuffer(directory, SEGMENT_SIZE, 2)) {
+            buffer.write(1, "first");
+            buffer.write(2, "second");
+            buffer.write(3, "third");
+        }
+        // overwrite a byte of the second message, past segment header, first record and second record header
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "segment-0000000000000000.spill"),
+                "rw")) {
+            file.seek(8 + 16 + "first".length() + 16);
+            file.write('S');
+        }
+
+        //Act
+        try (SpillBuffer buffer = new SpillBuffer(directory, SEGMENT_SIZE, 2)) {
+            List<LogEntry> entries = buffer.read(10, CloudWatchLogsSink.MAX_BATCH_BYTES);
+
+            //Assert
+            assertThat(entries).extracting(LogEntry::getMessage).containsExactly("first");
+        }
+    }
+
+    @Test
+    public void testSegmentRollingAndDiskBudget() throws IOException {
+        //Arrange
+        String message = new String(new char[100 * 1024]).replace('\0', 'x');
+        try (SpillBuffer buffer = new SpillBuffer(folder.getRoot(), SEGMENT_SIZE, 2)) {
+
+            //Act
+            int written = 0;
+            while (buffer.write(written, message)) {
+                written++;
+            }
+
+            //Assert
+            assertThat(written).isEqualTo(10);
+            int read = 0;
+            List<LogEntry> entries;
+            while (!(entries = buffer.read(3, CloudWatchLogsSink.MAX_BATCH_BYTES)).isEmpty()) {
+                read += entries.size();
+                buffer.commit();
+            }
+            assertThat(read).isEqualTo(written);
+            assertThat(buffer.write(0, message)).isTrue();
+        }
+    }
+
+    @Test
+    public void testConcurrentWritersRollingSegmentsWhileReading() throws Exception {
+        //Arrange
+        int writers = 4;
+        int records = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try (SpillBuffer buffer = new SpillBuffer(folder.getRoot(), 4096, 1000,
+                new SinkLimits(100, 64 * 1024, 64, 26, 0))) {
+
+            //Act
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                String prefix = "writer-" + writer + "-";
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < records; i++) {
+                        assertThat(buffer.write(i, prefix + i)).isTrue();
+                    }
+                    return null;
+                }));
+            }
+            Set<String> read = new HashSet<>();
+            int duplicates = 0;
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (read.size() < writers * records && System.currentTimeMillis() < deadline) {
+                for (LogEntry entry : buffer.read(100, CloudWatchLogsSink.MAX_BATCH_BYTES)) {
+                    duplicates += read.add(entry.getMessage()) ? 0 : 1;
+                    assertThat(entry.getMessage()).endsWith("-" + entry.getTimestamp());
+                }
+                buffer.commit();
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            //Assert
+            assertThat(read).hasSize(writers * records);
+            assertThat(duplicates).isZero();
+            assertThat(buffer.isEmpty()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.intapp.platform.logging.logback.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TailSamplerTest {
+    private static final long WINDOW = 1000;
+
+    private final LoggerContext context = new LoggerContext();
+    private final AtomicInteger discarded = new AtomicInteger();
+
+    @Test
+    public void testHeldEventsAreReleasedWhenTraceLogsWarning() {
+        //Arrange
+        TailSampler sampler = sampler(100, 10);
+        List<ILoggingEvent> released = new ArrayList<>();
+
+        //Act & Assert
+        assertThat(sampler.hold(event(0, Level.DEBUG, "a", "first"), released::add)).isTrue();
+        assertThat(sampler.hold(event(1, Level.DEBUG, "b", "other"), released::add)).isTrue();
+        assertThat(sampler.hold(event(2, Level.TRACE, "a", "second"), released::add)).isTrue();
+        assertThat(sampler.hold(event(3, Level.INFO, "a", "info"), released::add)).isFalse();
+        assertThat(sampler.hold(event(4, Level.DEBUG, (String) null, "untraced"), released::add)).isFalse();
+        assertThat(released).isEmpty();
+
+        assertThat(sampler.hold(event(5, Level.WARN, "a", "warning"), released::add)).isFalse();
+        assertThat(released).extracting(ILoggingEvent::getMessage).containsExactly("first", "second");
+        assertThat(sampler.hold(event(6, Level.DEBUG, "a", "after"), released::add)).isFalse();
+
+        sampler.sweep(1 + WINDOW);
+        assertThat(discarded.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTraceMarkedAsSampledIsNotHeld() {
+        //Arrange
+        TailSampler sampler = sampler(100, 10);
+        List<ILoggingEvent> released = new ArrayList<>();
+        Map<String, String> mdc = new HashMap<>();
+        mdc.put("traceId", "a");
+        mdc.put("sampled", "true");
+        LoggingEvent marked = event(1, Level.DEBUG, mdc, "marked");
+
+        //Act
+        boolean held = sampler.hold(event(0, Level.DEBUG, "a", "first"), released::add);
+        boolean markedHeld = sampler.hold(marked, released::add);
+
+        //Assert
+        assertThat(held).isTrue();
+        assertThat(markedHeld).isFalse();
+        assertThat(released).extracting(ILoggingEvent::getMessage).containsExactly("first");
+    }
+
+    @Test
+    public void testCapacityEvictsOldestEventsAndTraces() {
+        //Arrange
+        TailSampler sampler = sampler(1, 2);
+        List<ILoggingEvent> released = new ArrayList<>();
+
+        //Act
+        for (int i = 0; i < 3; i++) {
+            sampler.hold(event(i, Level.DEBUG, "a", "a" + i), released::add);
+        }
+        sampler.hold(event(3, Level.DEBUG, "b", "b"), released::add);
+        sampler.hold(event(4, Level.ERROR, "a", "error"), released::add);
+        sampler.hold(event(5, Level.ERROR, "b", "error"), released::add);
+
+        //Assert
+        // a0 and a1 are evicted by newer events of the trace, a2 by trace b, b by trace a tracked again
+        assertThat(released).isEmpty();
+        assertThat(discarded.get()).isEqualTo(4);
+    }
+
+    private TailSampler sampler(int capacity, int traceCapacity) {
+        return new TailSampler("traceId", "sampled", Level.INFO, Level.WARN, WINDOW, capacity, traceCapacity, false,
+                discarded::addAndGet);
+    }
+
+    private LoggingEvent event(long timestamp, Level level, String traceId, String message) {
+        Map<String, String> mdc = new HashMap<>();
+        if (traceId != null) {
+            mdc.put("traceId", traceId);
+        }
+        return event(timestamp, level, mdc, message);
+    }
+
+    private LoggingEvent event(long timestamp, Level level, Map<String, String> mdc, String message) {
+        LoggingEvent event = new LoggingEvent(TailSamplerTest.class.getName(), context.getLogger("test"), level,
+                message, null, null);
+        event.setTimeStamp(timestamp);
+        event.setMDCPropertyMap(mdc);
+        return event;
+    }
+}
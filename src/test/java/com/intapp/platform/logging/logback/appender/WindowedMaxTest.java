@@ -0,0 +1,41 @@
+package com.intapp.platform.logging.logback.appender;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WindowedMaxTest {
+
+    @Test
+    public void testMaxFallsAfterWindow() {
+        //Arrange
+        WindowedMax max = new WindowedMax(3000, 3, 0);
+
+        //Act
+        max.record(100, 500);
+        max.record(20, 1500);
+        long withinWindow = max.get(2999);
+        long afterPeak = max.get(3000);
+        long afterWindow = max.get(4000);
+
+        //Assert
+        assertThat(withinWindow).isEqualTo(100);
+        assertThat(afterPeak).isEqualTo(20);
+        assertThat(afterWindow).isZero();
+    }
+
+    @Test
+    public void testMaxIsResetAfterIdlePeriod() {
+        //Arrange
+        WindowedMax max = new WindowedMax(3000, 3, 0);
+        max.record(100, 500);
+
+        //Act
+        long idle = max.get(60_000);
+        max.record(10, 60_500);
+
+        //Assert
+        assertThat(idle).isZero();
+        assertThat(max.get(61_000)).isEqualTo(10);
+    }
+}
@@ -0,0 +1,104 @@
+package com.intapp.platform.logging.logback.emf;
+
+import ch.qos.logback.classic.LoggerContext;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intapp.platform.logging.logback.appender.AmazonCloudWatchAppender;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.within;
+
+public class EmbeddedMetricsTest {
+    private final List<String> messages = new ArrayList<>();
+    private EmbeddedMetrics metrics;
+
+    @Before
+    public void setUp() {
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender() {
+            @Override
+            public void appendMessage(long timestamp, String message) {
+                messages.add(message);
+            }
+        };
+        appender.setContext(new LoggerContext());
+        metrics = new EmbeddedMetrics(appender);
+        metrics.setNamespace("Orders");
+        metrics.addDimension("Service", "checkout");
+    }
+
+    @Test
+    public void testFlushPublishesAggregatedMetrics() throws Exception {
+        //Arrange
+        metrics.counter("Placed").increment();
+        metrics.counter("Placed").increment(2);
+        metrics.gauge("Pending", StandardUnit.Count).set(2.5);
+        metrics.gauge("Capacity", StandardUnit.Count, () -> 10);
+        Histogram latency = metrics.histogram("Latency", StandardUnit.Milliseconds);
+        latency.record(0);
+        latency.record(10);
+        latency.record(10);
+        latency.record(250);
+
+        //Act
+        metrics.flush();
+        metrics.flush();
+
+        //Assert
+        assertThat(messages).hasSize(2);
+        JsonNode first = new ObjectMapper().readTree(messages.get(0));
+        JsonNode definition = first.path("_aws").path("CloudWatchMetrics").path(0);
+        assertThat(definition.path("Namespace").asText()).isEqualTo("Orders");
+        assertThat(definition.path("Dimensions").toString()).isEqualTo("[[\"Service\"]]");
+        assertThat(definition.path("Metrics").findValuesAsText("Name"))
+                .containsExactlyInAnyOrder("Placed", "Pending", "Capacity", "Latency");
+        assertThat(first.path("Service").asText()).isEqualTo("checkout");
+        assertThat(first.path("Placed").asLong()).isEqualTo(3);
+        assertThat(first.path("Pending").asDouble()).isEqualTo(2.5);
+        assertThat(first.path("Capacity").asDouble()).isEqualTo(10);
+        assertThat(first.path("Latency").path("Values")).hasSize(3);
+        assertThat(first.path("Latency").path("Values").path(0).asDouble()).isZero();
+        assertThat(first.path("Latency").path("Values").path(1).asDouble()).isCloseTo(10, within(2.0));
+        assertThat(first.path("Latency").path("Counts").toString()).isEqualTo("[1,2,1]");
+
+        JsonNode second = new ObjectMapper().readTree(messages.get(1));
+        assertThat(second.path("Placed").asLong()).isZero();
+        assertThat(second.path("Pending").asDouble()).isEqualTo(2.5);
+        assertThat(second.has("Latency")).isFalse();
+    }
+
+    @Test
+    public void testHistogramBucketsKeepRelativeError() {
+        //Arrange
+        double[] values = {0.001, 0.3, 1, 1.41, 1.42, 7, 99.9, 1000, 123456.7, 3e10};
+
+        //Act & Assert
+        assertThat(Histogram.getBucket(0)).isZero();
+        assertThat(Histogram.getBucket(-5)).isZero();
+        assertThat(Histogram.getBucket(Double.MAX_VALUE)).isEqualTo(Histogram.BUCKET_COUNT - 1);
+        for (double value : values) {
+            int bucket = Histogram.getBucket(value);
+            assertThat(bucket).isBetween(1, Histogram.BUCKET_COUNT - 1);
+            assertThat(Histogram.getValue(bucket)).isCloseTo(value, within(value * 0.19));
+        }
+    }
+
+    @Test
+    public void testMetricNameCantBeReusedForAnotherType() {
+        //Arrange
+        metrics.counter("Requests");
+
+        //Act
+        Throwable thrown = catchThrowable(() -> metrics.histogram("Requests", StandardUnit.Milliseconds));
+
+        //Assert
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+        assertThat(metrics.counter("Requests")).isSameAs(metrics.counter("Requests", StandardUnit.Count));
+    }
+}
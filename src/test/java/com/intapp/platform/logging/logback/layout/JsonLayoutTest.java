@@ -0,0 +1,91 @@
+package com.intapp.platform.logging.logback.layout;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonLayoutTest {
+    private final LoggerContext context = new LoggerContext();
+
+    @Test
+    public void testEventFields() {
+        //Arrange
+        JsonLayout layout = new JsonLayout();
+        LoggingEvent event = new LoggingEvent(JsonLayoutTest.class.getName(), context.getLogger("com.example.Service"),
+                Level.INFO, "User {} said \"{}\"", null,
+                new Object[]{new AbstractMap.SimpleEntry<>("userId", 7), "hi\n\u0001"});
+        event.setTimeStamp(1500000000000L);
+        event.setThreadName("main");
+        event.setMDCPropertyMap(Collections.singletonMap("requestId", "42"));
+
+        //Act
+        String json = layout.doLayout(event);
+        DocumentContext document = JsonPath.parse(json);
+
+        //Assert
+        assertThat(json).doesNotContain("\n");
+        assertThat(document.read("$.timestamp", Long.class)).isEqualTo(1500000000000L);
+        assertThat(document.read("$.level", String.class)).isEqualTo("INFO");
+        assertThat(document.read("$.logger", String.class)).isEqualTo("com.example.Service");
+        assertThat(document.read("$.thread", String.class)).isEqualTo("main");
+        assertThat(document.read("$.message", String.class)).isEqualTo("User userId=7 said \"hi\n\u0001\"");
+        assertThat(document.read("$.mdc.requestId", String.class)).isEqualTo("42");
+        assertThat(document.read("$.arguments.userId", Integer.class)).isEqualTo(7);
+    }
+
+    @Test
+    public void testException() {
+        //Arrange
+        JsonLayout layout = new JsonLayout();
+        Exception exception = new IllegalStateException("outer", new IllegalArgumentException("inner"));
+        LoggingEvent event = new LoggingEvent(JsonLayoutTest.class.getName(), context.getLogger("test"),
+                Level.ERROR, "failed", exception, null);
+
+        //Act
+        DocumentContext document = JsonPath.parse(layout.doLayout(event));
+
+        //Assert
+        assertThat(document.read("$.exception.class", String.class)).isEqualTo(IllegalStateException.class.getName());
+        assertThat(document.read("$.exception.message", String.class)).isEqualTo("outer");
+        assertThat(document.read("$.exception.stackTrace[0]", String.class))
+                .startsWith("at " + JsonLayoutTest.class.getName() + ".testException(JsonLayoutTest.java:");
+        assertThat(document.read("$.exception.cause.class", String.class))
+                .isEqualTo(IllegalArgumentException.class.getName());
+        assertThat(document.read("$.exception.cause.commonFrames", Integer.class)).isPositive();
+    }
+
+    @Test
+    public void testRepeatedStackTraceIsWrittenAsReference() {
+        //Arrange
+        JsonLayout layout = new JsonLayout();
+        layout.setStackTraceReferences(true);
+        List<String> results = new ArrayList<>();
+
+        //Act
+        for (int i = 0; i < 2; i++) {
+            LoggingEvent event = new LoggingEvent(JsonLayoutTest.class.getName(), context.getLogger("test"),
+                    Level.ERROR, "failed", new IllegalStateException("attempt " + i), null);
+            results.add(layout.doLayout(event));
+        }
+
+        //Assert
+        DocumentContext first = JsonPath.parse(results.get(0));
+        DocumentContext second = JsonPath.parse(results.get(1));
+        assertThat(first.read("$.exception.stackTrace.length()", Integer.class)).isPositive();
+        assertThat(second.read("$.exception.message", String.class)).isEqualTo("attempt 1");
+        assertThat(second.read("$.exception.stackTraceRef", String.class))
+                .isEqualTo(first.read("$.exception.stackTraceId", String.class));
+        assertThat(results.get(1)).doesNotContain("\"stackTrace\"");
+    }
+}
@@ -0,0 +1,42 @@
+package com.intapp.platform.logging.logback.metrics;
+
+import com.intapp.platform.logging.logback.appender.AmazonCloudWatchAppender;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+public class CloudWatchAppenderHealthIndicatorTest {
+
+    @Test
+    public void testNotStartedAppenderIsDown() {
+        //Arrange
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender("test");
+
+        //Act
+        Health health = new CloudWatchAppenderHealthIndicator(appender).health();
+
+        //Assert
+        assertThat(health.getStatus()).isEqualTo(Status.DOWN);
+        assertThat(health.getDetails()).containsEntry("started", false).containsEntry("dropped", 0L)
+                .containsEntry("rejected", 0L);
+    }
+
+    @Test
+    public void testSuspendedSendingIsReportedAsDetail() {
+        //Arrange
+        AmazonCloudWatchAppender appender = spy(new AmazonCloudWatchAppender("test"));
+        doReturn(true).when(appender).isStarted();
+        doReturn(true).when(appender).isSendingSuspended();
+
+        //Act
+        Health health = new CloudWatchAppenderHealthIndicator(appender).health();
+
+        //Assert
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("sendingSuspended", true);
+    }
+}
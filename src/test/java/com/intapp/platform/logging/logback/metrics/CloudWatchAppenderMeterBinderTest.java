@@ -0,0 +1,28 @@
+package com.intapp.platform.logging.logback.metrics;
+
+import com.intapp.platform.logging.logback.appender.AmazonCloudWatchAppender;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CloudWatchAppenderMeterBinderTest {
+
+    @Test
+    public void testMetersAreRegistered() {
+        //Arrange
+        AmazonCloudWatchAppender appender = new AmazonCloudWatchAppender("test");
+        MeterRegistry registry = new SimpleMeterRegistry();
+
+        //Act
+        new CloudWatchAppenderMeterBinder(appender).bindTo(registry);
+
+        //Assert
+        assertThat(registry.find("cloudwatch.appender.queue.size").tag("appender", "test").gauge()).isNotNull();
+        assertThat(registry.find("cloudwatch.appender.events.dropped").functionCounter().count()).isZero();
+        assertThat(registry.find("cloudwatch.appender.events.rejected").functionCounter().count()).isZero();
+        assertThat(registry.find("cloudwatch.appender.requests").functionTimer().count()).isZero();
+        assertThat(registry.find("cloudwatch.appender.requests.throttled").functionCounter()).isNotNull();
+    }
+}
@@ -0,0 +1,51 @@
+package com.intapp.platform.logging.logback.sink;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFileIsRolledOverWhenBatchDoesNotFit() throws IOException {
+        //Arrange
+        FileSink sink = new FileSink(folder.getRoot(), 20, 1);
+        LogSink.Channel channel = sink.open("group/app", "stream");
+        File directory = new File(folder.getRoot(), "group_app");
+
+        //Act
+        channel.send(events("event-a", "event-b"));
+        channel.send(events("event-c"));
+        channel.send(events("event-d", "event-e"));
+        sink.shutdown();
+
+        //Assert
+        assertThat(lines(new File(directory, "stream.log"))).containsExactly("event-d", "event-e");
+        assertThat(lines(new File(directory, "stream.log.1"))).containsExactly("event-c");
+        assertThat(new File(directory, "stream.log.2")).doesNotExist();
+    }
+
+    private static List<InputLogEvent> events(String... messages) {
+        List<InputLogEvent> events = new ArrayList<>();
+        for (String message : messages) {
+            events.add(new InputLogEvent().withTimestamp(0L).withMessage(message));
+        }
+        return events;
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath());
+    }
+}
@@ -0,0 +1,88 @@
+package com.intapp.platform.logging.logback.sink;
+
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchRequest;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResponseEntry;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResult;
+import com.amazonaws.services.kinesisfirehose.model.Record;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class FirehoseSinkTest {
+
+    @Test
+    public void testEventsArePackedIntoCompressedRecords() throws IOException {
+        //Arrange
+        char[] chars = new char[100 * 1024];
+        List<InputLogEvent> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Arrays.fill(chars, (char) ('a' + i));
+            events.add(new InputLogEvent().withTimestamp((long) i).withMessage(new String(chars)));
+        }
+
+        //Act
+        List<Record> records = FirehoseSink.pack(events, new ByteArrayOutputStream());
+
+        //Assert
+        // 9 events of 100 KiB fit into a record
+        assertThat(records).hasSize(3);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (Record record : records) {
+            ByteBuffer buffer = record.getData();
+            data.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        // concatenated gzip members are read as a single stream
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(data.toByteArray())), StandardCharsets.UTF_8))) {
+            assertThat(reader.lines().collect(Collectors.toList()))
+                    .containsExactlyElementsOf(events.stream().map(InputLogEvent::getMessage).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testOnlyRejectedRecordsAreResent() throws IOException {
+        //Arrange
+        AmazonKinesisFirehose client = mock(AmazonKinesisFirehose.class);
+        when(client.putRecordBatch(any())).thenReturn(
+                new PutRecordBatchResult().withFailedPutCount(1).withRequestResponses(
+                        new PutRecordBatchResponseEntry().withRecordId("1"),
+                        new PutRecordBatchResponseEntry().withErrorCode("ServiceUnavailableException")),
+                new PutRecordBatchResult().withFailedPutCount(0).withRequestResponses(
+                        new PutRecordBatchResponseEntry().withRecordId("2")));
+        char[] chars = new char[600 * 1024];
+        Arrays.fill(chars, 'x');
+        String message = new String(chars);
+        LogSink.Channel channel = new FirehoseSink(client, "logs").open("group", "stream");
+
+        //Act
+        channel.send(Arrays.asList(new InputLogEvent().withTimestamp(1L).withMessage(message),
+                new InputLogEvent().withTimestamp(2L).withMessage(message)));
+
+        //Assert
+        ArgumentCaptor<PutRecordBatchRequest> requests = ArgumentCaptor.forClass(PutRecordBatchRequest.class);
+        verify(client, times(2)).putRecordBatch(requests.capture());
+        List<PutRecordBatchRequest> sent = requests.getAllValues();
+        assertThat(sent.get(0).getDeliveryStreamName()).isEqualTo("logs");
+        assertThat(sent.get(0).getRecords()).hasSize(2);
+        assertThat(sent.get(1).getRecords()).isEqualTo(Collections.singletonList(sent.get(0).getRecords().get(1)));
+    }
+}